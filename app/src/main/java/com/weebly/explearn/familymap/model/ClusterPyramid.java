@@ -0,0 +1,307 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+import dbModels.*;
+
+/**
+ * Groups the events on the map into clusters for every zoom level of the map
+ * Each level splits the world (in the map's mercator projection) into a grid of cells
+ * and a cell holds one cluster of the events inside it. The most detailed level is built
+ * from the events and every level above it is built by merging each square of four cells,
+ * so the whole pyramid is computed once and each camera move only reads the cells on screen
+ */
+public class ClusterPyramid {
+
+    public static final int MAX_ZOOM = 16; // above this zoom every event is shown on its own
+    public static final int CELLS_PER_TILE = 4; // cluster cells across one 256 pixel map tile
+
+    private static final int ORDINAL_BITS = 27; // bits left for an ordinal below a packed cell
+    private static final double MAX_LATITUDE = 85.05112878; // the edge of the mercator map
+
+    private final EventStore eventStore;
+    private final Level[] levels; // clusters by zoom level
+
+    /**
+     * Builds the clusters of every zoom level from the events on the map
+     *
+     * @param eventStore every event
+     * @param visible the ordinals of the events which appear on the map
+     */
+    public ClusterPyramid(EventStore eventStore, BitSet visible) {
+        this.eventStore = eventStore;
+        levels = new Level[MAX_ZOOM + 1];
+
+        // sort the events by cell at the most detailed level, keeping the ordinal in the low bits
+        int numVisible = visible.cardinality();
+        long[] packed = new long[numVisible];
+        double cellsAcross = cellsAcross(MAX_ZOOM);
+        int n = 0;
+        for (int i = visible.nextSetBit(0); i >= 0 && i < eventStore.size();
+             i = visible.nextSetBit(i + 1)) {
+            int x = cellOf(projectX(eventStore.getLongitude(i)), cellsAcross);
+            int y = cellOf(projectY(eventStore.getLatitude(i)), cellsAcross);
+            packed[n++] = (cellKey(MAX_ZOOM, x, y) << ORDINAL_BITS) | i;
+        }
+        Arrays.sort(packed, 0, n);
+
+        Level level = new Level(n);
+        for (int i = 0; i < n; i++) {
+            long cell = packed[i] >>> ORDINAL_BITS;
+            int ordinal = (int) (packed[i] & ((1L << ORDINAL_BITS) - 1));
+            double x = projectX(eventStore.getLongitude(ordinal));
+            double y = projectY(eventStore.getLatitude(ordinal));
+            if (level.size == 0 || level.keys[level.size - 1] != cell) {
+                level.keys[level.size] = cell;
+                level.representatives[level.size] = ordinal;
+                level.size++;
+            }
+            int last = level.size - 1;
+            level.counts[last]++;
+            level.sumsX[last] += x;
+            level.sumsY[last] += y;
+        }
+        level.trim();
+        levels[MAX_ZOOM] = level;
+
+        // merge each square of four cells into the cell above it
+        for (int zoom = MAX_ZOOM - 1; zoom >= 0; zoom--) {
+            Level child = levels[zoom + 1];
+            long[] parents = new long[child.size];
+            for (int i = 0; i < child.size; i++) {
+                long parent = cellKey(zoom, cellX(zoom + 1, child.keys[i]) / 2,
+                        cellY(zoom + 1, child.keys[i]) / 2);
+                parents[i] = (parent << ORDINAL_BITS) | i;
+            }
+            Arrays.sort(parents);
+
+            Level merged = new Level(child.size);
+            for (long entry : parents) {
+                long cell = entry >>> ORDINAL_BITS;
+                int index = (int) (entry & ((1L << ORDINAL_BITS) - 1));
+                if (merged.size == 0 || merged.keys[merged.size - 1] != cell) {
+                    merged.keys[merged.size] = cell;
+                    merged.representatives[merged.size] = child.representatives[index];
+                    merged.size++;
+                }
+                int last = merged.size - 1;
+                merged.counts[last] += child.counts[index];
+                merged.sumsX[last] += child.sumsX[index];
+                merged.sumsY[last] += child.sumsY[index];
+            }
+            merged.trim();
+            levels[zoom] = merged;
+        }
+    }
+
+    /**
+     * Finds the clusters at a zoom level whose cells overlap a box
+     * A box whose west edge is east of its east edge crosses the 180th meridian
+     *
+     * @param zoom the zoom level of the map, from 0 to MAX_ZOOM
+     * @param south the southern latitude of the box
+     * @param west the western longitude of the box
+     * @param north the northern latitude of the box
+     * @param east the eastern longitude of the box
+     * @return the clusters inside the box
+     */
+    public List<Cluster> query(int zoom, double south, double west, double north, double east) {
+        zoom = Math.max(0, Math.min(MAX_ZOOM, zoom));
+        Level level = levels[zoom];
+        double cellsAcross = cellsAcross(zoom);
+        int top = cellOf(projectY(north), cellsAcross);
+        int bottom = cellOf(projectY(south), cellsAcross);
+        int left = cellOf(projectX(west), cellsAcross);
+        int right = cellOf(projectX(east), cellsAcross);
+
+        List<Cluster> clusters = new ArrayList<>();
+        if (west <= east) {
+            addClusters(clusters, level, zoom, left, right, top, bottom);
+        }
+        else if (left <= right) {
+            // both sides of the 180th meridian share a column, so the box covers every column
+            addClusters(clusters, level, zoom, 0, (int) cellsAcross - 1, top, bottom);
+        }
+        else {
+            addClusters(clusters, level, zoom, left, (int) cellsAcross - 1, top, bottom);
+            addClusters(clusters, level, zoom, 0, right, top, bottom);
+        }
+        return clusters;
+    }
+
+    /**
+     * Adds the number of events in each cell of a square block of cells to a grid
+     * Columns past either side of the map wrap around the 180th meridian, and rows past
+     * the top or bottom of the map are left empty
+     *
+     * @param zoom the zoom level of the cells, from 0 to MAX_ZOOM
+     * @param left the column of the block's first cell
+     * @param top the row of the block's first cell
+     * @param size the number of cells across and down the block
+     * @param counts the grid of the block's cells, row by row, to be added to
+     * @return the number of events added
+     */
+    public int addCounts(int zoom, long left, long top, int size, float[] counts) {
+        Level level = levels[zoom];
+        long cellsAcross = (long) cellsAcross(zoom);
+        long firstRow = Math.max(0, top);
+        long lastRow = Math.min(cellsAcross - 1, top + size - 1);
+        int total = 0;
+        for (int column = 0; column < size && firstRow <= lastRow; column++) {
+            long x = ((left + column) % cellsAcross + cellsAcross) % cellsAcross;
+            long last = cellKey(zoom, x, lastRow);
+            for (int i = lowerBound(level, cellKey(zoom, x, firstRow));
+                 i < level.size && level.keys[i] <= last; i++) {
+                int row = (int) (cellY(zoom, level.keys[i]) - top);
+                counts[row * size + column] += level.counts[i];
+                total += level.counts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param zoom a zoom level of the map
+     * @return the number of clusters at that zoom level
+     */
+    public int size(int zoom) {
+        return levels[Math.max(0, Math.min(MAX_ZOOM, zoom))].size;
+    }
+
+    private void addClusters(List<Cluster> clusters, Level level, int zoom, int left, int right,
+                             int top, int bottom) {
+        for (int x = left; x <= right; x++) {
+            // cells are sorted by column and then row, so each column is one contiguous run
+            int i = lowerBound(level, cellKey(zoom, x, top));
+            long last = cellKey(zoom, x, bottom);
+            for (; i < level.size && level.keys[i] <= last; i++) {
+                double x0 = level.sumsX[i] / level.counts[i];
+                double y0 = level.sumsY[i] / level.counts[i];
+                clusters.add(new Cluster(zoom + "/" + level.keys[i], unprojectY(y0),
+                        unprojectX(x0), level.counts[i],
+                        eventStore.getEvent(level.representatives[i])));
+            }
+        }
+    }
+
+    private static int lowerBound(Level level, long key) {
+        int low = 0;
+        int high = level.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (level.keys[middle] < key) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static double cellsAcross(int zoom) {
+        return (double) (1L << zoom) * CELLS_PER_TILE;
+    }
+
+    private static int cellOf(double projected, double cellsAcross) {
+        return (int) Math.max(0, Math.min(cellsAcross - 1, Math.floor(projected * cellsAcross)));
+    }
+
+    private static long cellKey(int zoom, long x, long y) {
+        return x * (long) cellsAcross(zoom) + y;
+    }
+
+    private static long cellX(int zoom, long key) {
+        return key / (long) cellsAcross(zoom);
+    }
+
+    private static long cellY(int zoom, long key) {
+        return key % (long) cellsAcross(zoom);
+    }
+
+    static double projectX(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    static double projectY(double latitude) {
+        double radians = Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude)));
+        return 0.5 - Math.log(Math.tan(Math.PI / 4 + radians / 2)) / (2 * Math.PI);
+    }
+
+    static double unprojectX(double x) {
+        return x * 360 - 180;
+    }
+
+    static double unprojectY(double y) {
+        return Math.toDegrees(2 * Math.atan(Math.exp((0.5 - y) * 2 * Math.PI)) - Math.PI / 2);
+    }
+
+    /**
+     * A group of nearby events on the map, placed at the average of their positions
+     */
+    public static class Cluster {
+        private final String key; // unique to this cell and zoom level
+        private final double latitude;
+        private final double longitude;
+        private final int count; // the number of events in the cluster
+        private final Event event; // one event in the cluster
+
+        private Cluster(String key, double latitude, double longitude, int count, Event event) {
+            this.key = key;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.count = count;
+            this.event = event;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public Event getEvent() {
+            return event;
+        }
+    }
+
+    /**
+     * The clusters of one zoom level in parallel arrays sorted by cell
+     */
+    private static class Level {
+        private long[] keys;
+        private int[] counts;
+        private double[] sumsX;
+        private double[] sumsY;
+        private int[] representatives;
+        private int size = 0;
+
+        private Level(int capacity) {
+            keys = new long[capacity];
+            counts = new int[capacity];
+            sumsX = new double[capacity];
+            sumsY = new double[capacity];
+            representatives = new int[capacity];
+        }
+
+        /**
+         * Shrinks the arrays to the number of clusters, since merging leaves most of them unused
+         */
+        private void trim() {
+            keys = Arrays.copyOf(keys, size);
+            counts = Arrays.copyOf(counts, size);
+            sumsX = Arrays.copyOf(sumsX, size);
+            sumsY = Arrays.copyOf(sumsY, size);
+            representatives = Arrays.copyOf(representatives, size);
+        }
+    }
+}
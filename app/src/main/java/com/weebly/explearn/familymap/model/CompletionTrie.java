@@ -0,0 +1,245 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+
+/**
+ * A compact prefix trie (radix tree) over lowercase terms (person names and places) used for
+ * type-ahead completion
+ * Chains of nodes with a single child are merged into one edge labelled with their characters,
+ * so each key adds at most two nodes to the trie however long it is
+ * Each term is reachable from every word it contains, so "webb" completes to "Dylan Webb"
+ * as well as "dylan" does. Every node keeps the top suggestions in its subtree ranked by
+ * weight (the number of events), so a completion only walks the prefix and never the
+ * subtree below it
+ */
+public class CompletionTrie {
+
+    public static final int MAX_SUGGESTIONS = 5;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private final Node root;
+
+    public CompletionTrie() {
+        root = new Node("");
+    }
+
+    /**
+     * Adds a term to the trie under itself and under each later word it contains,
+     * adding its weight to any term already there
+     * Suggestions are not up to date until rank is called
+     *
+     * @param display the term as it should be shown
+     * @param weight the rank of the term (such as a number of events)
+     */
+    public void add(String display, int weight) {
+        String term = display.toLowerCase();
+        Node node = insert(term);
+        Entry entry = node.getEntry(term);
+        if (entry == null) {
+            entry = new Entry(display);
+            node.addEntry(entry);
+            for (int start = 1; start < term.length(); start++) {
+                if (!Character.isWhitespace(term.charAt(start))
+                        && Character.isWhitespace(term.charAt(start - 1))) {
+                    insert(term.substring(start)).addEntry(entry);
+                }
+            }
+        }
+        entry.weight += weight;
+    }
+
+    /**
+     * Precomputes the top suggestions of every node from the bottom of the trie up
+     */
+    public void rank() {
+        // collect nodes parent first, then rank them in reverse so children are ranked first
+        ArrayList<Node> nodes = new ArrayList<>();
+        nodes.add(root);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            for (int j = 0; j < node.numChildren; j++) {
+                nodes.add(node.children[j]);
+            }
+        }
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            nodes.get(i).rank();
+        }
+    }
+
+    /**
+     * Retrieves the top suggestions which have a word beginning with a prefix
+     *
+     * @param prefix the text typed so far
+     * @return up to MAX_SUGGESTIONS terms in order of weight
+     */
+    public List<String> complete(String prefix) {
+        String term = prefix.toLowerCase();
+        if (term.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Node node = root;
+        int matched = 0;
+        while (matched < term.length()) {
+            node = node.getChild(term.charAt(matched));
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            int length = Math.min(node.label.length(), term.length() - matched);
+            if (!node.label.regionMatches(0, term, matched, length)) {
+                return Collections.emptyList();
+            }
+            matched += length;
+        }
+        List<String> suggestions = new ArrayList<>();
+        for (Entry suggestion : node.suggestions) {
+            suggestions.add(suggestion.display);
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return the number of nodes in the trie, including the root
+     */
+    public int size() {
+        int size = 0;
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        nodes.add(root);
+        while (!nodes.isEmpty()) {
+            Node node = nodes.poll();
+            size++;
+            for (int i = 0; i < node.numChildren; i++) {
+                nodes.add(node.children[i]);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Finds the node a key ends at, adding it and splitting an edge where the key leaves it
+     */
+    private Node insert(String key) {
+        Node node = root;
+        int matched = 0;
+        while (matched < key.length()) {
+            Node child = node.getChild(key.charAt(matched));
+            if (child == null) {
+                child = new Node(key.substring(matched));
+                node.addChild(child);
+                node = child;
+                break;
+            }
+            int common = 1;
+            while (common < child.label.length() && matched + common < key.length()
+                    && child.label.charAt(common) == key.charAt(matched + common)) {
+                common++;
+            }
+            if (common < child.label.length()) {
+                // the key leaves the edge partway, so split it where they differ
+                Node split = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.addChild(child);
+                node.replaceChild(split);
+                child = split;
+            }
+            node = child;
+            matched += common;
+        }
+        return node;
+    }
+
+    /**
+     * A term and its weight, shared by every key the term is found under
+     */
+    private static class Entry {
+        private final String display;
+        private int weight;
+
+        private Entry(String display) {
+            this.display = display;
+        }
+    }
+
+    /**
+     * An edge of one or more characters, with its children kept in parallel arrays sorted by
+     * the first character of their labels
+     */
+    private static class Node {
+        private String label; // the characters between the parent and this node
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int numChildren = 0;
+
+        private Entry[] entries = NO_ENTRIES; // the terms whose keys end at this node
+        private Entry[] suggestions = NO_ENTRIES; // the best terms in this subtree
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private Node getChild(char key) {
+            int index = Arrays.binarySearch(keys, 0, numChildren, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private void addChild(Node child) {
+            char key = child.label.charAt(0);
+            int index = -Arrays.binarySearch(keys, 0, numChildren, key) - 1;
+            if (numChildren == keys.length) {
+                keys = Arrays.copyOf(keys, Math.max(2, numChildren * 2));
+                children = Arrays.copyOf(children, keys.length);
+            }
+            System.arraycopy(keys, index, keys, index + 1, numChildren - index);
+            System.arraycopy(children, index, children, index + 1, numChildren - index);
+            keys[index] = key;
+            children[index] = child;
+            numChildren++;
+        }
+
+        private void replaceChild(Node child) {
+            children[Arrays.binarySearch(keys, 0, numChildren, child.label.charAt(0))] = child;
+        }
+
+        private Entry getEntry(String term) {
+            for (Entry entry : entries) {
+                if (entry.display.toLowerCase().equals(term)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private void addEntry(Entry entry) {
+            for (Entry existing : entries) {
+                if (existing == entry) {
+                    return;
+                }
+            }
+            entries = Arrays.copyOf(entries, entries.length + 1);
+            entries[entries.length - 1] = entry;
+        }
+
+        private void rank() {
+            ArrayList<Entry> candidates = new ArrayList<>(Arrays.asList(entries));
+            for (int i = 0; i < numChildren; i++) {
+                for (Entry suggestion : children[i].suggestions) {
+                    // a term reached through two of its words is only suggested once
+                    if (!candidates.contains(suggestion)) {
+                        candidates.add(suggestion);
+                    }
+                }
+            }
+            Collections.sort(candidates, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry a, Entry b) {
+                    if (a.weight != b.weight) {
+                        return Integer.compare(b.weight, a.weight);
+                    }
+                    return a.display.compareTo(b.display);
+                }
+            });
+            int numSuggestions = Math.min(MAX_SUGGESTIONS, candidates.size());
+            suggestions = candidates.subList(0, numSuggestions).toArray(NO_ENTRIES);
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package com.weebly.explearn.familymap.model;
 
-import com.weebly.explearn.familymap.ui.PersonActivity;
-
 import java.util.*;
 import dbModels.*;
 
 /**
  * A singleton class which holds all the person and event data for the family tree
+ * The data is published as immutable snapshots: writers build the next snapshot
+ * and swap it in, so readers never lock and always see a consistent family tree
  */
 public class DataCache {
 
-    private static DataCache instance;
+    /**
+     * Holds the single instance, which the class loader creates safely on first use
+     */
+    private static class InstanceHolder {
+        private static final DataCache INSTANCE = new DataCache();
+    }
 
     /**
      * When first called, a new instance of the datacache is created
@@ -19,31 +24,23 @@ public class DataCache {
      * @return the current instance of the datacache
      */
     public static DataCache getInstance() {
-
-        if(instance == null) {
-            instance = new DataCache();
-        }
-
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
-    private Person user; // the current user
+    private static final String[] LINE_TYPES = {"life_story", "family_tree", "spouse"};
+
+    private volatile Snapshot snapshot; // the family tree currently seen by readers
 
     private final ArrayList<String> eventFilters; // current filters on events
     private final ArrayList<String> lineFilters; // current filters on lines
 
-    private final Map<String, Person> mapPeople; // people whose events appear on the map
-    private final Map<String, Event> mapEvents; // events which appear on the map
-    private final Map<String, Person> allPeople; // all people
-    private final Map<String, Event> allEvents; // all events
-    private final Map<String, String> colorMap; // a mapping of event/line type to color
-
-    private boolean loggedIn; // holds whether or not the user is logged in
-    private boolean updatedEvents; // holds whether or not event filters have been updated
-    private boolean updatedLines; // holds whether or not line filters have been updated
+    private volatile boolean loggedIn; // holds whether or not the user is logged in
+    private volatile boolean updatedEvents; // holds whether or not event filters have been updated
+    private volatile boolean updatedLines; // holds whether or not line filters have been updated
+    private volatile boolean heatmap; // holds whether event density is shown instead of markers
 
     private DataCache() {
-        user = null;
+        snapshot = newSnapshot();
 
         eventFilters = new ArrayList<>();
         eventFilters.add("father");
@@ -56,27 +53,48 @@ public class DataCache {
         lineFilters.add("family_tree");
         lineFilters.add("spouse");
 
-        mapPeople = new HashMap<>();
-        mapEvents = new HashMap<>();
-        allPeople = new HashMap<>();
-        allEvents = new HashMap<>();
-        colorMap = new HashMap<>();
-
         loggedIn = false;
         updatedEvents = true;
         updatedLines = true;
+        heatmap = false;
     }
 
     public Map<String, Person> getPeople() {
-        return allPeople;
+        return snapshot.allPeople;
     }
 
     public Map<String, Event> getEvents() {
-        return mapEvents;
+        return snapshot.mapEvents;
     }
 
-    public void setUser(Person person) {
-        user = person;
+    public StringDictionary getDictionary() {
+        return snapshot.dictionary;
+    }
+
+    public EventStore getEventStore() {
+        return snapshot.eventStore;
+    }
+
+    /**
+     * @return the version of the current snapshot, which increases with every change
+     */
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * @return a version which increases only when the events on the map change
+     */
+    public long getFilterVersion() {
+        return snapshot.filterVersion;
+    }
+
+    public Person getUser() {
+        return snapshot.user;
+    }
+
+    public synchronized void setUser(Person person) {
+        snapshot = snapshot.withUser(person);
     }
 
     public ArrayList<String> getEventFilters() {
@@ -99,27 +117,122 @@ public class DataCache {
         return updatedLines;
     }
 
+    public boolean isHeatmap() {
+        return heatmap;
+    }
+
     /**
-     * Inserts person objects into allPeaople and mapPeople to be stored
-     * 
+     * Switches the map between event markers and a heatmap of event density
+     *
+     * @param heatmap whether or not the heatmap should be shown
+     */
+    public void setHeatmap(boolean heatmap) {
+        this.heatmap = heatmap;
+        updatedEvents = false;
+    }
+
+    /**
+     * Inserts person objects into allPeople to be stored
+     * Each person is also indexed as a child of their mother and father and by their names
+     * The new people are seen by readers once the next snapshot has been built
+     * Every call rebuilds the indexes over people, so a whole family tree should be inserted
+     * at once or through an insertion
+     *
      * @param peopleToInsert an array of person objects to be inserted
      */
-    public void insertPeople(ArrayList<Person> peopleToInsert) {
+    public synchronized void insertPeople(ArrayList<Person> peopleToInsert) {
+        Snapshot.Builder builder = new Snapshot.Builder(snapshot);
         for (Person person: peopleToInsert) {
-            allPeople.put(person.getPersonID(), person);
-            mapPeople.put(person.getPersonID(), person);
+            builder.addPerson(person);
         }
+        snapshot = builder.build();
     }
 
     /**
-     * Inserts event objects into allEvents and mapEvents to be stored
+     * Inserts event objects into allEvents to be stored
+     * Each event is also indexed under its person in chronological order
+     * and by its type, places and year
+     * The new events are seen by readers once the next snapshot has been built
+     * Every call rebuilds the indexes over events, so a whole family tree should be inserted
+     * at once or through an insertion
      *
      * @param eventsToInsert an array of event objects to be inserted
      */
-    public void insertEvents(ArrayList<Event> eventsToInsert) {
+    public synchronized void insertEvents(ArrayList<Event> eventsToInsert) {
+        Snapshot.Builder builder = new Snapshot.Builder(snapshot);
         for (Event event: eventsToInsert) {
-            allEvents.put(event.getEventID(), event);
-            mapEvents.put(event.getEventID(), event);
+            builder.addEvent(event);
+        }
+        snapshot = builder.build();
+    }
+
+    /**
+     * Starts inserting people and events one at a time, as they are read from the server
+     * Nothing is seen by readers until the insertion is committed
+     *
+     * @return an empty insertion into the family tree
+     */
+    public Insertion beginInsertion() {
+        return new Insertion();
+    }
+
+    /**
+     * People and events collected one at a time to be inserted into the family tree together
+     * Each one's repeated strings are replaced with their shared instances as it arrives,
+     * and committing builds a single snapshot for all of them
+     * People and events may be added from different threads
+     */
+    public class Insertion {
+        private final ArrayList<Person> people = new ArrayList<>();
+        private final ArrayList<Event> events = new ArrayList<>();
+        // a copy of the published dictionary, so interning never touches what readers see
+        private final StringDictionary dictionary = new StringDictionary(snapshot.dictionary);
+
+        private Insertion() {
+        }
+
+        /**
+         * @param person a person to be inserted
+         */
+        public void addPerson(Person person) {
+            synchronized (dictionary) {
+                dictionary.internPerson(person);
+            }
+            synchronized (people) {
+                people.add(person);
+            }
+        }
+
+        /**
+         * @param event an event to be inserted
+         */
+        public void addEvent(Event event) {
+            synchronized (dictionary) {
+                dictionary.internEvent(event);
+            }
+            synchronized (events) {
+                events.add(event);
+            }
+        }
+
+        /**
+         * Inserts everything added so far, as insertPeople and insertEvents would
+         */
+        public void commit() {
+            synchronized (DataCache.this) {
+                Snapshot.Builder builder = new Snapshot.Builder(snapshot);
+                synchronized (people) {
+                    for (Person person : people) {
+                        builder.addPerson(person);
+                    }
+                }
+                synchronized (events) {
+                    for (Event event : events) {
+                        builder.addEvent(event);
+                    }
+                }
+                snapshot = builder.build();
+            }
         }
     }
 
@@ -130,7 +243,7 @@ public class DataCache {
      * @return the first and last name concatenated with a space
      */
     public String getPersonFullName(String personID) {
-        Person person = allPeople.get(personID);
+        Person person = snapshot.allPeople.get(personID);
         if (person != null) {
             return person.getFirstName() + " " + person.getLastName();
         }
@@ -146,7 +259,7 @@ public class DataCache {
      * @return the type, city, country and year concatenated with punctuation
      */
     public String getEventDetails(String eventID) {
-        Event event = allEvents.get(eventID);
+        Event event = snapshot.allEvents.get(eventID);
         if (event != null) {
             return event.getEventType() + ": " + event.getCity() + ", " +
                     event.getCountry() + " (" + event.getYear() + ")";
@@ -158,44 +271,24 @@ public class DataCache {
 
     /**
      * Retrieves all life events of a given person in chronological order
+     * The list is sorted once per snapshot and shared until the events on the map change
      *
      * @param personID the ID of the queried person
-     * @return a chronologically ordered list of event objects
-     */
-    public ArrayList<Event> getLifeEvents(String personID) {
-        ArrayList<Event> lifeEvents = new ArrayList<>();
-        for (Event event : mapEvents.values()) {
-            if (event.getPersonID().equals(personID)) {
-                if (lifeEvents.isEmpty()) { // add first event
-                    lifeEvents.add(0, event);
-                }
-                else {
-                    // add subsequent events in chronological order
-                    // with birth always first and death always last
-                    for (int i = 0; i < lifeEvents.size(); i++) {
-                        if (event.getYear() < lifeEvents.get(i).getYear()
-                                || event.getEventType().toLowerCase().equals("birth")
-                                || lifeEvents.get(i).getEventType().toLowerCase().equals("death")) {
-                            lifeEvents.add(i, event);
-                            break;
-                        }
-                        else if (event.getYear() == lifeEvents.get(i).getYear()
-                                && !event.getEventType().toLowerCase().equals("death")) {
-                            if (event.getEventType().toLowerCase().compareTo(
-                                    lifeEvents.get(i).getEventType().toLowerCase()) < 0) {
-                                lifeEvents.add(i, event);
-                                break;
-                            }
-                        }
-                        else if (i == lifeEvents.size() - 1) {
-                            lifeEvents.add(event);
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-        return lifeEvents;
+     * @return a read-only chronologically ordered list of event objects
+     */
+    public List<Event> getLifeEvents(String personID) {
+        return snapshot.getVisibleLifeEvents(personID);
+    }
+
+    /**
+     * Retrieves the first life event of a given person, usually their birth
+     * Looked up from a table built with the family tree, without sorting the person's events
+     *
+     * @param personID the ID of the queried person
+     * @return the first event object, or null if the person has no events on the map
+     */
+    public Event getAnchorEvent(String personID) {
+        return snapshot.getAnchorEvent(personID);
     }
 
     /**
@@ -205,47 +298,78 @@ public class DataCache {
      * @return a list of person objects
      */
     public ArrayList<Person> getFamily(String personID) {
+        Snapshot s = snapshot;
         ArrayList<Person> family = new ArrayList<>();
-        Person person = allPeople.get(personID);
+        Person person = s.allPeople.get(personID);
         if (person != null) {
             if (person.getFatherID() != null) {
-                family.add(allPeople.get(person.getFatherID()));
+                family.add(s.allPeople.get(person.getFatherID()));
             }
             if (person.getMotherID() != null) {
-                family.add(allPeople.get(person.getMotherID()));
+                family.add(s.allPeople.get(person.getMotherID()));
             }
             if (person.getSpouseID() != null) {
-                family.add(allPeople.get(person.getSpouseID()));
+                family.add(s.allPeople.get(person.getSpouseID()));
             }
-            for (Person child : allPeople.values()) {
-                if (child.getMotherID() != null) {
-                    if (child.getMotherID().equals(personID)) {
-                        family.add(child);
-                    }
-                }
-                if (child.getFatherID() != null) {
-                    if (child.getFatherID().equals(personID)) {
-                        family.add(child);
-                    }
-                }
+            List<Person> children = s.allChildren.get(personID);
+            if (children != null) {
+                family.addAll(children);
             }
         }
         return family;
     }
 
+    /**
+     * Retrieves all children of a given person
+     *
+     * @param personID the ID of the queried parent
+     * @return a list of person objects
+     */
+    public ArrayList<Person> getChildren(String personID) {
+        List<Person> children = snapshot.allChildren.get(personID);
+        if (children == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(children);
+    }
+
+    /**
+     * Names what one person is to another, such as "Grandmother" or "Second Cousin Once Removed"
+     * Only the generations between the two people and their nearest common ancestor are searched,
+     * and never more than RelationshipCalculator.MAX_ANCESTORS ancestors of each
+     *
+     * @param fromPersonID the ID of the person the relationship is described from
+     * @param toPersonID the ID of the person whose relationship is described
+     * @return the name of the relationship or null if the people are not related
+     */
+    public String getRelationship(String fromPersonID, String toPersonID) {
+        return snapshot.relationships.describe(fromPersonID, toPersonID);
+    }
+
     /**
      * Filters allPeople by a given search string
+     * Queries of three or more characters only check people found in the trigram index
      *
      * @param search the string to be queried
      * @return a list of person objects
      */
     public ArrayList<Person> getSearchedPeople(String search) {
+        Snapshot s = snapshot;
         ArrayList<Person> filteredPeople = new ArrayList<>();
         if (!search.isEmpty()) {
-            for (Person person : allPeople.values()) {
-                if ((person.getFirstName().toLowerCase().contains(search.toLowerCase()) ||
-                        person.getLastName().toLowerCase().contains(search.toLowerCase()))) {
-                    filteredPeople.add(person);
+            String query = search.toLowerCase();
+            if (query.length() < TrigramIndex.MIN_QUERY_LENGTH) {
+                for (int i = 0; i < s.personNames.size(); i++) {
+                    if (matchesPerson(s, i, query)) {
+                        filteredPeople.add(s.people.get(i));
+                    }
+                }
+            }
+            else {
+                for (int ordinal : s.personSearchIndex.search(query)) {
+                    if (matchesPerson(s, ordinal, query)) {
+                        filteredPeople.add(s.people.get(ordinal));
+                    }
                 }
             }
         }
@@ -254,33 +378,164 @@ public class DataCache {
 
     /**
      * Filters mapEvents by a given search string
+     * Queries of three or more characters only check events found in the trigram index
      *
      * @param search the string to be queried
      * @return a list of event objects
      */
     public ArrayList<Event> getSearchedEvents(String search) {
+        Snapshot s = snapshot;
         ArrayList<Event> filteredEvents = new ArrayList<>();
         if (!search.isEmpty()) {
-            for (Event event : mapEvents.values()) {
-                if (event.getEventType().toLowerCase().contains(search.toLowerCase()) ||
-                        event.getCountry().toLowerCase().contains(search.toLowerCase()) ||
-                        event.getCity().toLowerCase().contains(search.toLowerCase()) ||
-                        String.valueOf(event.getYear()).contains(search.toLowerCase())) {
-                    filteredEvents.add(event);
+            String query = search.toLowerCase();
+            BitSet visibleEvents = s.visibleEvents;
+            if (query.length() < TrigramIndex.MIN_QUERY_LENGTH) {
+                for (int i = visibleEvents.nextSetBit(0); i >= 0;
+                     i = visibleEvents.nextSetBit(i + 1)) {
+                    if (matchesEvent(s, i, query)) {
+                        filteredEvents.add(s.eventStore.getEvent(i));
+                    }
+                }
+            }
+            else {
+                for (int ordinal : s.eventSearchIndex.search(query)) {
+                    if (visibleEvents.get(ordinal) && matchesEvent(s, ordinal, query)) {
+                        filteredEvents.add(s.eventStore.getEvent(ordinal));
+                    }
                 }
             }
         }
         return filteredEvents;
     }
 
+    /**
+     * Finds the events on the map inside a box, nearest the center of the box first
+     * Only the grid cells overlapping the box are checked
+     *
+     * @param south the southern latitude of the box
+     * @param west the western longitude of the box (east of east if crossing the 180th meridian)
+     * @param north the northern latitude of the box
+     * @param east the eastern longitude of the box
+     * @param limit the most events to be returned
+     * @return a list of up to limit event objects
+     */
+    public ArrayList<Event> getEventsInBounds(double south, double west, double north,
+                                              double east, int limit) {
+        Snapshot s = snapshot;
+        ArrayList<Event> events = new ArrayList<>();
+        for (int ordinal : s.spatialGrid.query(south, west, north, east, s.visibleEvents, limit)) {
+            events.add(s.eventStore.getEvent(ordinal));
+        }
+        return events;
+    }
+
+    /**
+     * @return the year of the earliest event in the family tree, or 0 if there are none
+     */
+    public int getFirstYear() {
+        return snapshot.yearIndex.getFirstYear();
+    }
+
+    /**
+     * @return the year of the latest event in the family tree, or 0 if there are none
+     */
+    public int getLastYear() {
+        return snapshot.yearIndex.getLastYear();
+    }
+
+    /**
+     * Finds the events on the map within a range of years, earliest first
+     * Only the events in the range are checked, so a time slider which moves by a few years
+     * costs a binary search plus the events entering or leaving its range
+     *
+     * @param fromYear the first year of the range
+     * @param toYear the last year of the range
+     * @param limit the most events to be returned
+     * @return a list of up to limit event objects
+     */
+    public ArrayList<Event> getEventsInYears(int fromYear, int toYear, int limit) {
+        return getEventsInYears(fromYear, toYear, -90, -180, 90, 180, limit);
+    }
+
+    /**
+     * Finds the events on the map within a range of years and inside a box, earliest first
+     *
+     * @param fromYear the first year of the range
+     * @param toYear the last year of the range
+     * @param south the southern latitude of the box
+     * @param west the western longitude of the box (east of east if crossing the 180th meridian)
+     * @param north the northern latitude of the box
+     * @param east the eastern longitude of the box
+     * @param limit the most events to be returned
+     * @return a list of up to limit event objects
+     */
+    public ArrayList<Event> getEventsInYears(int fromYear, int toYear, double south,
+                                             double west, double north, double east,
+                                             int limit) {
+        Snapshot s = snapshot;
+        ArrayList<Event> events = new ArrayList<>();
+        for (int ordinal : s.yearIndex.query(fromYear, toYear, s.visibleEvents, south, west,
+                north, east, limit)) {
+            events.add(s.eventStore.getEvent(ordinal));
+        }
+        return events;
+    }
+
+    /**
+     * Draws one map tile of the density of the events on the map
+     * Safe to call from any thread, since the tile is drawn from a single snapshot
+     * The first tile after each change also builds the clusters, so this should be called
+     * off the main thread
+     *
+     * @param rasterizer the rasterizer which draws the tile
+     * @param zoom the zoom level of the tile
+     * @param x the column of the tile
+     * @param y the row of the tile
+     * @return the ARGB pixels of the tile, or null if no events on the map are near it
+     */
+    public int[] renderHeatmapTile(HeatmapRasterizer rasterizer, int zoom, int x, int y) {
+        Snapshot s = snapshot;
+        return rasterizer.render(s.eventStore, s.spatialGrid, s.getClusterPyramid(),
+                s.visibleEvents, zoom, x, y);
+    }
+
+    /**
+     * Retrieves the clusters of the events on the map for every zoom level
+     * They are built on first use after each change, which takes a while for a large tree,
+     * so this should be called off the main thread
+     *
+     * @return the clusters of the events on the map
+     */
+    public ClusterPyramid getClusterPyramid() {
+        return snapshot.getClusterPyramid();
+    }
+
+    /**
+     * @return the clusters of the events on the map, or null if they still need to be built
+     */
+    public ClusterPyramid getBuiltClusterPyramid() {
+        return snapshot.peekClusterPyramid();
+    }
+
+    /**
+     * Suggests person names and places for the search bar
+     *
+     * @param prefix the text typed so far
+     * @return up to five names or places, those with the most events first
+     */
+    public List<String> getCompletions(String prefix) {
+        return snapshot.completions.complete(prefix);
+    }
+
     /**
      * Adds and removes event filters when toggled in the settings activity
-     * Calls functions which enact filter changes in mapPeople and mapEvents
+     * The filter index then recombines its bitsets into the events on the map
+     * which are published in the next snapshot
      *
      * @param filter the filter to be added or removed from eventFilters
      * @param add a boolean defining the operation to be performed
      */
-    public void changeEventFilters(String filter, boolean add) {
+    public synchronized void changeEventFilters(String filter, boolean add) {
         updatedEvents = false;
         if (add) {
             eventFilters.add(filter);
@@ -288,7 +543,7 @@ public class DataCache {
         else {
             eventFilters.remove(filter);
         }
-        filterMapEvents();
+        snapshot = snapshot.withVisibleEvents(snapshot.filterIndex.combine(eventFilters));
     }
 
     /**
@@ -318,17 +573,19 @@ public class DataCache {
 
     /**
      * Retrieves the color associated with a specific type of event or line
-     * If no associated color exists, a new mapping is defined and stored
+     * Every type in the family tree is given a color when its snapshot is built,
+     * so this never locks or modifies anything
      *
      * @param type the associated type of the queried event or line (e.g. male or spouse)
      * @return the name of the corresponding color as found in colors.xml
      */
     public String getCorrespondingColor(String type) {
-        final int numColors = 27;
-        if (!colorMap.containsKey(type.toLowerCase())) {
-            colorMap.put(type.toLowerCase(), "color" + ((colorMap.size() % numColors) + 1));
+        int color = snapshot.getTypeColor(type);
+        if (color == 0) {
+            // a type outside the family tree still gets the same color every time
+            color = Math.abs(type.toLowerCase().hashCode() % Snapshot.NUM_COLORS) + 1;
         }
-        return colorMap.get(type.toLowerCase());
+        return "color" + color;
     }
 
     /**
@@ -341,15 +598,13 @@ public class DataCache {
     /**
      * Logs the user out and resets the datacache
      */
-    public void logout() {
+    public synchronized void logout() {
         loggedIn = false;
         updatedEvents = true;
         updatedLines = true;
+        heatmap = false;
 
-        allPeople.clear();
-        allEvents.clear();
-        mapEvents.clear();
-        mapPeople.clear();
+        snapshot = newSnapshot();
 
         eventFilters.clear();
         eventFilters.add("father");
@@ -363,57 +618,28 @@ public class DataCache {
         lineFilters.add("spouse");
     }
 
-    private void filterMapEvents() {
-        mapPeople.clear();
-        mapPeople.put(user.getPersonID(), user);
-        if (user.getSpouseID() != null) {
-            mapPeople.put(user.getSpouseID(), allPeople.get(user.getSpouseID()));
-        }
-        mapEvents.clear();
-        if (eventFilters.contains("father")) {
-            filterAncestors(user.getFatherID());
-        }
-        if (eventFilters.contains("mother")) {
-            filterAncestors(user.getMotherID());
-        }
-        if (eventFilters.contains("male") && !eventFilters.contains("female")) {
-            filterGender("m");
-        }
-        else if (!eventFilters.contains("male") && eventFilters.contains("female")) {
-            filterGender("f");
-        }
-        else if (!eventFilters.contains("male") && !eventFilters.contains("female")) {
-            mapPeople.clear();
-        }
-        for (Event event : allEvents.values()) {
-            if (mapPeople.containsKey(event.getPersonID())) {
-                mapEvents.put(event.getEventID(), event);
-            }
+    /**
+     * @return the snapshot of an empty family tree, with the types of lines given colors first
+     */
+    private static Snapshot newSnapshot() {
+        StringDictionary dictionary = new StringDictionary();
+        for (String type : LINE_TYPES) {
+            dictionary.intern(type);
         }
+        return new Snapshot(dictionary);
     }
 
-    private void filterGender(String g) {
-        Map<String, Person> tempPeople = new HashMap<>();
-        for (Person person : mapPeople.values()) {
-            tempPeople.put(person.getPersonID(), person);
-        }
-        mapPeople.clear();
-        for (Person person : allPeople.values()) {
-            if (person.getGender().equals(g)) {
-                if (tempPeople.containsKey(person.getPersonID())) {
-                    mapPeople.put(person.getPersonID(), person);
-                }
-            }
-        }
+    private static boolean matchesPerson(Snapshot s, int ordinal, String query) {
+        String[] names = s.personNames.get(ordinal);
+        return names[0].contains(query) || names[1].contains(query);
     }
 
-    private void filterAncestors(String personID) {
-        if (allPeople.get(personID).getMotherID() != null) {
-            filterAncestors(allPeople.get(personID).getMotherID());
-        }
-        if (allPeople.get(personID).getFatherID() != null) {
-            filterAncestors(allPeople.get(personID).getFatherID());
-        }
-        mapPeople.put(personID, allPeople.get(personID));
+    private static boolean matchesEvent(Snapshot s, int ordinal, String query) {
+        StringDictionary dictionary = s.dictionary;
+        EventStore eventStore = s.eventStore;
+        return dictionary.getLowerString(eventStore.getTypeCode(ordinal)).contains(query) ||
+                dictionary.getLowerString(eventStore.getCountryCode(ordinal)).contains(query) ||
+                dictionary.getLowerString(eventStore.getCityCode(ordinal)).contains(query) ||
+                String.valueOf(eventStore.getYear(ordinal)).contains(query);
     }
 }
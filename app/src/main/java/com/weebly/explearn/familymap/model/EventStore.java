@@ -0,0 +1,131 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+import dbModels.*;
+
+/**
+ * A columnar store of every event in the family tree
+ * Each event is given a dense ordinal and the fields read by the map and search
+ * are kept in parallel primitive arrays indexed by that ordinal,
+ * with event types and places stored as dictionary codes
+ * A store is filled while a snapshot is built and never modified once it is published
+ */
+public class EventStore {
+
+    private final StringDictionary dictionary; // the dictionary holding type and place codes
+    private final Map<String, Integer> ordinals; // event ID to ordinal
+    private Event[] events; // events by ordinal
+    private double[] latitudes;
+    private double[] longitudes;
+    private int[] years;
+    private int[] typeCodes;
+    private int[] cityCodes;
+    private int[] countryCodes;
+    private int size;
+
+    public EventStore(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+        ordinals = new HashMap<>();
+        allocate(16);
+    }
+
+    /**
+     * Creates a copy of another store which can have more events added to it
+     *
+     * @param other the store to be copied
+     * @param dictionary a copy of the other store's dictionary, which new events are interned into
+     */
+    public EventStore(EventStore other, StringDictionary dictionary) {
+        this.dictionary = dictionary;
+        ordinals = new HashMap<>(other.ordinals);
+        size = other.size;
+        grow(other, Math.max(16, other.size));
+    }
+
+    /**
+     * Stores an event, reusing its ordinal if an event with the same ID is already stored
+     *
+     * @param event the event to be stored
+     * @return the ordinal of the event
+     */
+    public int add(Event event) {
+        Integer ordinal = ordinals.get(event.getEventID());
+        if (ordinal == null) {
+            if (size == events.length) {
+                grow(this, size * 2);
+            }
+            ordinal = size++;
+            ordinals.put(event.getEventID(), ordinal);
+        }
+        events[ordinal] = event;
+        latitudes[ordinal] = event.getLatitude();
+        longitudes[ordinal] = event.getLongitude();
+        years[ordinal] = event.getYear();
+        typeCodes[ordinal] = dictionary.intern(event.getEventType());
+        cityCodes[ordinal] = dictionary.intern(event.getCity());
+        countryCodes[ordinal] = dictionary.intern(event.getCountry());
+        return ordinal;
+    }
+
+    /**
+     * @param eventID the ID of the queried event
+     * @return the ordinal of the event or -1 if it is not stored
+     */
+    public int getOrdinal(Object eventID) {
+        Integer ordinal = ordinals.get(eventID);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    public Event getEvent(int ordinal) {
+        return events[ordinal];
+    }
+
+    public double getLatitude(int ordinal) {
+        return latitudes[ordinal];
+    }
+
+    public double getLongitude(int ordinal) {
+        return longitudes[ordinal];
+    }
+
+    public int getYear(int ordinal) {
+        return years[ordinal];
+    }
+
+    public int getTypeCode(int ordinal) {
+        return typeCodes[ordinal];
+    }
+
+    public int getCityCode(int ordinal) {
+        return cityCodes[ordinal];
+    }
+
+    public int getCountryCode(int ordinal) {
+        return countryCodes[ordinal];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void allocate(int capacity) {
+        events = new Event[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        years = new int[capacity];
+        typeCodes = new int[capacity];
+        cityCodes = new int[capacity];
+        countryCodes = new int[capacity];
+        size = 0;
+    }
+
+    private void grow(EventStore from, int capacity) {
+        events = Arrays.copyOf(from.events, capacity);
+        latitudes = Arrays.copyOf(from.latitudes, capacity);
+        longitudes = Arrays.copyOf(from.longitudes, capacity);
+        years = Arrays.copyOf(from.years, capacity);
+        typeCodes = Arrays.copyOf(from.typeCodes, capacity);
+        cityCodes = Arrays.copyOf(from.cityCodes, capacity);
+        countryCodes = Arrays.copyOf(from.countryCodes, capacity);
+    }
+}
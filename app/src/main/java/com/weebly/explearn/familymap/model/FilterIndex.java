@@ -0,0 +1,151 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+import dbModels.*;
+
+/**
+ * Keeps a bitset of event ordinals for each event filter
+ * (father's side, mother's side, male, female) so that the events which
+ * appear on the map can be recombined with a few word-level operations
+ * Built once for each snapshot of the family tree and never modified afterwards
+ */
+class FilterIndex {
+
+    // people and events belonging to each filter
+    private final Filter userFilter;
+    private final Filter fatherFilter;
+    private final Filter motherFilter;
+    private final Filter maleFilter;
+    private final Filter femaleFilter;
+    private final Filter allFilter;
+
+    /**
+     * Builds the filter bitsets for a family tree
+     *
+     * @param people every person in order of their ordinals
+     * @param personOrdinals a mapping of person ID to ordinal
+     * @param eventStore every event
+     * @param user the current user (may be null)
+     */
+    FilterIndex(List<Person> people, Map<String, Integer> personOrdinals,
+                EventStore eventStore, Person user) {
+        userFilter = new Filter();
+        fatherFilter = new Filter();
+        motherFilter = new Filter();
+        maleFilter = new Filter();
+        femaleFilter = new Filter();
+        allFilter = new Filter();
+
+        if (user != null) {
+            setPerson(userFilter, personOrdinals, user.getPersonID());
+            setPerson(userFilter, personOrdinals, user.getSpouseID());
+            // the father's and mother's sides are only ever walked here, once per snapshot
+            collectAncestors(fatherFilter.people, people, personOrdinals, user.getFatherID());
+            collectAncestors(motherFilter.people, people, personOrdinals, user.getMotherID());
+        }
+        for (int i = 0; i < people.size(); i++) {
+            Person person = people.get(i);
+            if (person.getGender().equals("m")) {
+                maleFilter.people.set(i);
+            }
+            else if (person.getGender().equals("f")) {
+                femaleFilter.people.set(i);
+            }
+            allFilter.people.set(i);
+        }
+
+        // an event belongs to every filter its person belongs to
+        for (int i = 0; i < eventStore.size(); i++) {
+            Integer personOrdinal = personOrdinals.get(eventStore.getEvent(i).getPersonID());
+            if (personOrdinal != null) {
+                userFilter.setEventIfPerson(i, personOrdinal);
+                fatherFilter.setEventIfPerson(i, personOrdinal);
+                motherFilter.setEventIfPerson(i, personOrdinal);
+                maleFilter.setEventIfPerson(i, personOrdinal);
+                femaleFilter.setEventIfPerson(i, personOrdinal);
+            }
+            allFilter.events.set(i);
+        }
+    }
+
+    /**
+     * Recombines the filter bitsets into the events which appear on the map
+     *
+     * @param eventFilters the event filters which are currently switched on
+     * @return the ordinals of the visible events
+     */
+    BitSet combine(List<String> eventFilters) {
+        BitSet visible = (BitSet) userFilter.events.clone();
+        if (eventFilters.contains("father")) {
+            visible.or(fatherFilter.events);
+        }
+        if (eventFilters.contains("mother")) {
+            visible.or(motherFilter.events);
+        }
+
+        if (eventFilters.contains("male") && eventFilters.contains("female")) {
+            visible.and(allFilter.events);
+        }
+        else if (eventFilters.contains("male")) {
+            visible.and(maleFilter.events);
+        }
+        else if (eventFilters.contains("female")) {
+            visible.and(femaleFilter.events);
+        }
+        else {
+            visible.clear();
+        }
+        return visible;
+    }
+
+    private static void setPerson(Filter filter, Map<String, Integer> personOrdinals,
+                                  String personID) {
+        Integer ordinal = personOrdinals.get(personID);
+        if (ordinal != null) {
+            filter.people.set(ordinal);
+        }
+    }
+
+    /**
+     * Adds a person and all of their ancestors to a set using an explicit work queue
+     * People already in the set are not revisited, so a cycle in bad data cannot loop forever
+     *
+     * @param ancestors the set of person ordinals to be filled
+     * @param people every person in order of their ordinals
+     * @param personOrdinals a mapping of person ID to ordinal
+     * @param personID the ID of the first person to be added
+     */
+    private static void collectAncestors(BitSet ancestors, List<Person> people,
+                                         Map<String, Integer> personOrdinals, String personID) {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        enqueueAncestor(ancestors, queue, personOrdinals, personID);
+        while (!queue.isEmpty()) {
+            Person person = people.get(queue.poll());
+            enqueueAncestor(ancestors, queue, personOrdinals, person.getMotherID());
+            enqueueAncestor(ancestors, queue, personOrdinals, person.getFatherID());
+        }
+    }
+
+    private static void enqueueAncestor(BitSet ancestors, ArrayDeque<Integer> queue,
+                                        Map<String, Integer> personOrdinals, String personID) {
+        Integer ordinal = personOrdinals.get(personID);
+        if (ordinal != null && !ancestors.get(ordinal)) {
+            ancestors.set(ordinal);
+            queue.add(ordinal);
+        }
+    }
+
+    /**
+     * The people and events which belong to a single event filter
+     */
+    private static class Filter {
+        private final BitSet people = new BitSet();
+        private final BitSet events = new BitSet();
+
+        private void setEventIfPerson(int eventOrdinal, int personOrdinal) {
+            if (people.get(personOrdinal)) {
+                events.set(eventOrdinal);
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+
+/**
+ * Draws the density of the events on the map into square map tiles for a heatmap
+ * Events near a tile are counted into the pixel under them, the counts are blurred with
+ * a gaussian kernel (one row pass and one column pass), and each pixel's density is
+ * colored from transparent blue up to red. The color of a density never depends on the
+ * tile, so neighboring tiles line up without seams
+ * A rasterizer keeps nothing between calls, so many threads may share one
+ */
+public class HeatmapRasterizer {
+
+    public static final int TILE_SIZE = 256; // width and height of a tile in pixels
+    public static final int DEFAULT_RADIUS = 12; // pixels an event's heat spreads over
+    public static final double DEFAULT_SCALE = 3.0; // density shown at about two thirds of red
+
+    private static final int NUM_COLORS = 256;
+    // a cluster cell this many zoom levels below a tile covers a single pixel of it
+    private static final int PIXEL_LEVELS = Integer.numberOfTrailingZeros(
+            TILE_SIZE / ClusterPyramid.CELLS_PER_TILE);
+
+    private final int radius;
+    private final double scale;
+    private final float[] kernel; // gaussian weights from -radius to radius, 1 at the center
+    private final int[] palette; // ARGB colors from no density to the most density
+
+    /**
+     * Creates a rasterizer
+     *
+     * @param radius the distance in pixels an event's heat spreads over
+     * @param scale the density at which a pixel is colored about two thirds of the way to red
+     */
+    public HeatmapRasterizer(int radius, double scale) {
+        this.radius = radius;
+        this.scale = scale;
+
+        kernel = new float[2 * radius + 1];
+        double sigma = Math.max(1, radius / 3.0);
+        for (int i = -radius; i <= radius; i++) {
+            kernel[i + radius] = (float) Math.exp(-(i * i) / (2 * sigma * sigma));
+        }
+
+        // fade in as blue, then pass through green and yellow on the way to red
+        double[] stops = {0, 0.2, 0.5, 0.75, 1};
+        int[][] colors = {{0, 0, 255, 0}, {0, 0, 255, 160}, {0, 255, 0, 180},
+                {255, 255, 0, 200}, {255, 0, 0, 220}};
+        palette = new int[NUM_COLORS];
+        for (int i = 0; i < NUM_COLORS; i++) {
+            double t = (double) i / (NUM_COLORS - 1);
+            int stop = 1;
+            while (stop < stops.length - 1 && t > stops[stop]) {
+                stop++;
+            }
+            double fraction = (t - stops[stop - 1]) / (stops[stop] - stops[stop - 1]);
+            int[] argb = new int[4];
+            for (int channel = 0; channel < 4; channel++) {
+                argb[channel] = (int) Math.round(colors[stop - 1][channel]
+                        + fraction * (colors[stop][channel] - colors[stop - 1][channel]));
+            }
+            palette[i] = (argb[3] << 24) | (argb[0] << 16) | (argb[1] << 8) | argb[2];
+        }
+    }
+
+    /**
+     * Draws one map tile of the heatmap
+     * Zoomed out, the events are already counted by pixel in the cluster pyramid,
+     * so the tile never touches the events themselves. Zoomed in, the events near the tile
+     * are few and are found through the spatial grid instead
+     *
+     * @param eventStore every event
+     * @param spatialGrid the events bucketed by coordinates, to find those near the tile
+     * @param pyramid the clusters of the events on the map
+     * @param visible the ordinals of the events which appear on the map
+     * @param zoom the zoom level of the tile
+     * @param x the column of the tile, from the 180th meridian eastward
+     * @param y the row of the tile, from the top of the map southward
+     * @return the ARGB pixels of the tile row by row, or null if no events are near it
+     */
+    public int[] render(EventStore eventStore, SpatialGrid spatialGrid, ClusterPyramid pyramid,
+                        BitSet visible, int zoom, int x, int y) {
+        int size = TILE_SIZE + 2 * radius; // the tile plus the margin heat spreads in from
+        float[] counts = new float[size * size];
+        int numCounted;
+        if (zoom + PIXEL_LEVELS <= ClusterPyramid.MAX_ZOOM) {
+            numCounted = pyramid.addCounts(zoom + PIXEL_LEVELS, (long) x * TILE_SIZE - radius,
+                    (long) y * TILE_SIZE - radius, size, counts);
+        }
+        else {
+            numCounted = addCounts(eventStore, spatialGrid, visible, zoom, x, y, counts);
+        }
+        if (numCounted == 0) {
+            return null;
+        }
+
+        // spread each count along its row, keeping only the columns inside the tile
+        float[] rows = new float[size * TILE_SIZE];
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                float count = counts[row * size + column];
+                if (count != 0) {
+                    int first = Math.max(0, column - 2 * radius);
+                    int last = Math.min(TILE_SIZE - 1, column);
+                    for (int out = first; out <= last; out++) {
+                        rows[row * TILE_SIZE + out] += count * kernel[column - out];
+                    }
+                }
+            }
+        }
+
+        // then down each column, keeping only the rows inside the tile
+        float[] density = new float[TILE_SIZE * TILE_SIZE];
+        for (int row = 0; row < size; row++) {
+            int first = Math.max(0, row - 2 * radius);
+            int last = Math.min(TILE_SIZE - 1, row);
+            for (int column = 0; column < TILE_SIZE; column++) {
+                float value = rows[row * TILE_SIZE + column];
+                if (value != 0) {
+                    for (int out = first; out <= last; out++) {
+                        density[out * TILE_SIZE + column] += value * kernel[row - out];
+                    }
+                }
+            }
+        }
+
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        for (int i = 0; i < pixels.length; i++) {
+            if (density[i] > 0) {
+                double intensity = 1 - Math.exp(-density[i] / scale);
+                pixels[i] = palette[(int) (intensity * (NUM_COLORS - 1))];
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Counts the events near a tile into the pixels under them
+     *
+     * @param counts the grid of the tile and its margin, row by row, to be added to
+     * @return the number of events counted
+     */
+    private int addCounts(EventStore eventStore, SpatialGrid spatialGrid, BitSet visible,
+                          int zoom, int x, int y, float[] counts) {
+        double worldPixels = (double) TILE_SIZE * (1L << zoom);
+        double left = (double) x * TILE_SIZE - radius;
+        double top = (double) y * TILE_SIZE - radius;
+        int size = TILE_SIZE + 2 * radius;
+        int numCounted = 0;
+
+        // find the events within reach of the tile, wrapping around the 180th meridian
+        // events beyond the edge of the mercator map are drawn at its edge
+        double north = top <= 0 ? 90 : ClusterPyramid.unprojectY(top / worldPixels);
+        double south = top + size >= worldPixels ? -90
+                : ClusterPyramid.unprojectY((top + size) / worldPixels);
+        double west = -180;
+        double east = 180;
+        if (size < worldPixels) {
+            west = wrapLongitude(ClusterPyramid.unprojectX(left / worldPixels));
+            east = wrapLongitude(ClusterPyramid.unprojectX((left + size) / worldPixels));
+        }
+        int[] ordinals = spatialGrid.query(south, west, north, east, visible,
+                Integer.MAX_VALUE);
+
+        // the latitude at the top of each row, so events find their row without a logarithm
+        // rows at the edges of the mercator map also take every event beyond them
+        double[] rowLatitudes = new double[size + 1];
+        for (int row = 0; row <= size; row++) {
+            double projected = (top + row) / worldPixels;
+            rowLatitudes[row] = projected <= 0 ? Double.POSITIVE_INFINITY
+                    : projected >= 1 ? Double.NEGATIVE_INFINITY
+                    : ClusterPyramid.unprojectY(projected);
+        }
+
+        for (int ordinal : ordinals) {
+            double px = ClusterPyramid.projectX(eventStore.getLongitude(ordinal)) * worldPixels
+                    - left;
+            if (px < 0) {
+                px += worldPixels;
+            }
+            else if (px >= size) {
+                px -= worldPixels;
+            }
+            int column = (int) Math.floor(px);
+            int row = findRow(rowLatitudes, eventStore.getLatitude(ordinal));
+            if (column >= 0 && column < size && row >= 0) {
+                counts[row * size + column]++;
+                numCounted++;
+            }
+        }
+        return numCounted;
+    }
+
+    /**
+     * @param rowLatitudes the latitude at the top of each row, from north to south,
+     * followed by the latitude at the bottom of the last row
+     * @param latitude the latitude of an event
+     * @return the row the latitude falls in, or -1 if it falls outside every row
+     */
+    private static int findRow(double[] rowLatitudes, double latitude) {
+        if (latitude > rowLatitudes[0] || latitude < rowLatitudes[rowLatitudes.length - 1]) {
+            return -1;
+        }
+        int low = 0;
+        int high = rowLatitudes.length - 2;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (rowLatitudes[middle] >= latitude) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private static double wrapLongitude(double longitude) {
+        return ((longitude + 180) % 360 + 360) % 360 - 180;
+    }
+}
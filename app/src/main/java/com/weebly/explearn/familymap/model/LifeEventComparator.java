@@ -0,0 +1,92 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+
+/**
+ * Orders a person's life events chronologically with birth always first and death always last
+ * Events in the same year are ordered by type ignoring case, then by ID,
+ * so the order never depends on the order the events were inserted
+ * Events are compared by their ordinals in an event store, so ranks, years and types are
+ * compared as ints; only two different types in the same year need their strings compared
+ * A person's ordinals are sorted with Collections.sort, which is stable
+ */
+public class LifeEventComparator implements Comparator<Integer> {
+
+    private static final int BIRTH_RANK = 0;
+    private static final int OTHER_RANK = 1;
+    private static final int DEATH_RANK = 2;
+
+    private final EventStore eventStore;
+    private final StringDictionary dictionary;
+    private final int birthCode; // the code of "birth", or NONE if no event has the type
+    private final int deathCode; // the code of "death", or NONE if no event has the type
+
+    /**
+     * Resolves the codes of the birth and death types once, so each comparison only
+     * compares ints to find them
+     *
+     * @param eventStore the events to be compared
+     * @param dictionary the dictionary the event store's codes belong to
+     */
+    public LifeEventComparator(EventStore eventStore, StringDictionary dictionary) {
+        this.eventStore = eventStore;
+        this.dictionary = dictionary;
+        birthCode = dictionary.getCode("birth");
+        deathCode = dictionary.getCode("death");
+    }
+
+    /**
+     * @param a the ordinal of an event
+     * @param b the ordinal of another event
+     * @return a negative number, zero or a positive number as a comes before, with or after b
+     */
+    @Override
+    public int compare(Integer a, Integer b) {
+        return compare(a.intValue(), b.intValue());
+    }
+
+    private int compare(int a, int b) {
+        int lowerA = dictionary.getLowerCode(eventStore.getTypeCode(a));
+        int lowerB = dictionary.getLowerCode(eventStore.getTypeCode(b));
+        int result = Integer.compare(rank(lowerA), rank(lowerB));
+        if (result == 0) {
+            result = Integer.compare(eventStore.getYear(a), eventStore.getYear(b));
+        }
+        if (result == 0 && lowerA != lowerB) {
+            result = typeOf(lowerA).compareTo(typeOf(lowerB));
+        }
+        if (result == 0) {
+            int typeA = eventStore.getTypeCode(a);
+            int typeB = eventStore.getTypeCode(b);
+            if (typeA != typeB) {
+                result = typeOf(typeA).compareTo(typeOf(typeB));
+            }
+        }
+        if (result == 0) {
+            String idA = eventStore.getEvent(a).getEventID();
+            String idB = eventStore.getEvent(b).getEventID();
+            if (idA != null && idB != null) {
+                result = idA.compareTo(idB);
+            }
+        }
+        return result;
+    }
+
+    private int rank(int lowerCode) {
+        if (lowerCode == StringDictionary.NONE) {
+            return OTHER_RANK;
+        }
+        else if (lowerCode == birthCode) {
+            return BIRTH_RANK;
+        }
+        else if (lowerCode == deathCode) {
+            return DEATH_RANK;
+        }
+        return OTHER_RANK;
+    }
+
+    private String typeOf(int code) {
+        String type = dictionary.getString(code);
+        return type == null ? "" : type;
+    }
+}
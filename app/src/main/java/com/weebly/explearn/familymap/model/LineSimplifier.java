@@ -0,0 +1,139 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+
+/**
+ * Simplifies the lines drawn between events for one zoom level of the map
+ * Points are projected to the pixels of the map (in its mercator projection) at that zoom,
+ * then the Douglas-Peucker algorithm keeps only the points which move the line by more
+ * than a tolerance, and lines which would be shorter than the tolerance are dropped
+ */
+public class LineSimplifier {
+
+    public static final double DEFAULT_TOLERANCE = 1.5; // pixels a point must move the line by
+    private static final int TILE_PIXELS = 256; // width of a map tile in pixels
+
+    private final double worldPixels; // width of the whole map in pixels at this zoom
+    private final double tolerance; // in pixels
+
+    /**
+     * Creates a simplifier for one zoom level
+     *
+     * @param zoom the zoom level of the map
+     * @param tolerance the distance in pixels below which details are left out
+     */
+    public LineSimplifier(int zoom, double tolerance) {
+        this.worldPixels = (double) TILE_PIXELS * (1L << Math.max(0, Math.min(30, zoom)));
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Finds the points of a line which are needed to draw it at this zoom
+     * Longitudes are unwrapped along the line, so a line crossing the 180th meridian
+     * is simplified as the short way across it, as the map draws it
+     *
+     * @param latitudes the latitude of each point along the line
+     * @param longitudes the longitude of each point along the line
+     * @return the indices of the points to keep in order, or none if the whole line
+     * would be drawn within the tolerance of a single point
+     */
+    public int[] simplify(double[] latitudes, double[] longitudes) {
+        int numPoints = latitudes.length;
+        double[] xs = new double[numPoints];
+        double[] ys = new double[numPoints];
+        double previousLongitude = 0;
+        for (int i = 0; i < numPoints; i++) {
+            double longitude = longitudes[i];
+            if (i > 0) {
+                longitude += 360 * Math.round((previousLongitude - longitude) / 360);
+            }
+            previousLongitude = longitude;
+            xs[i] = ClusterPyramid.projectX(longitude) * worldPixels;
+            ys[i] = ClusterPyramid.projectY(latitudes[i]) * worldPixels;
+        }
+        if (numPoints < 2 || isWithinTolerance(xs, ys)) {
+            return new int[0];
+        }
+
+        // keep the point farthest from each chord until every point is within the tolerance
+        boolean[] kept = new boolean[numPoints];
+        kept[0] = true;
+        kept[numPoints - 1] = true;
+        int numKept = 2;
+        ArrayDeque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, numPoints - 1});
+        double squaredTolerance = tolerance * tolerance;
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int farthest = -1;
+            double farthestDistance = squaredTolerance;
+            for (int i = range[0] + 1; i < range[1]; i++) {
+                double distance = squaredDistance(xs[i], ys[i], xs[range[0]], ys[range[0]],
+                        xs[range[1]], ys[range[1]]);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest >= 0) {
+                kept[farthest] = true;
+                numKept++;
+                ranges.push(new int[] {range[0], farthest});
+                ranges.push(new int[] {farthest, range[1]});
+            }
+        }
+
+        int[] indices = new int[numKept];
+        int n = 0;
+        for (int i = 0; i < numPoints; i++) {
+            if (kept[i]) {
+                indices[n++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Rounds a position to a square of the map as wide as the tolerance at this zoom,
+     * so that lines which would be drawn over each other can be recognized
+     *
+     * @param latitude the latitude of the position
+     * @param longitude the longitude of the position
+     * @return a key shared by every position drawn within the same square
+     */
+    public long getPixelKey(double latitude, double longitude) {
+        long x = (long) Math.floor(ClusterPyramid.projectX(longitude) * worldPixels
+                / tolerance);
+        long y = (long) Math.floor(ClusterPyramid.projectY(latitude) * worldPixels
+                / tolerance);
+        return (x << 32) ^ y;
+    }
+
+    private boolean isWithinTolerance(double[] xs, double[] ys) {
+        for (int i = 1; i < xs.length; i++) {
+            double dx = xs[i] - xs[0];
+            double dy = ys[i] - ys[0];
+            if (dx * dx + dy * dy >= tolerance * tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the squared distance from a point to the segment between two others
+     */
+    private static double squaredDistance(double x, double y, double x1, double y1,
+                                          double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double squaredLength = dx * dx + dy * dy;
+        double t = 0;
+        if (squaredLength > 0) {
+            t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / squaredLength));
+        }
+        double nearestX = x1 + t * dx - x;
+        double nearestY = y1 + t * dy - y;
+        return nearestX * nearestX + nearestY * nearestY;
+    }
+}
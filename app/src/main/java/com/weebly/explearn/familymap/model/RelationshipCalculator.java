@@ -0,0 +1,362 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+import dbModels.*;
+
+/**
+ * Names the relationship between two people in the family tree,
+ * such as "Second Cousin Once Removed"
+ * Parent links are kept as arrays of person ordinals and each query searches upwards from both
+ * people one generation at a time, stopping as soon as no closer common ancestor can exist
+ * Each side of a search visits at most MAX_ANCESTORS ancestors, so a query never costs more
+ * than that however large the tree is; people whose nearest common ancestor lies beyond those
+ * ancestors are treated as unrelated
+ * People in separate families are recognised up front and never searched
+ */
+public class RelationshipCalculator {
+
+    public static final int MAX_GENERATIONS = 32; // how far back a common ancestor is searched
+    public static final int MAX_ANCESTORS = 4096; // most ancestors visited above each person
+    private static final int NONE = -1;
+
+    private static final String[] ORDINALS = {"First", "Second", "Third", "Fourth", "Fifth",
+            "Sixth", "Seventh", "Eighth", "Ninth", "Tenth"};
+    private static final String[] TIMES = {"Once", "Twice", "Three Times"};
+
+    private final List<Person> people; // people by ordinal
+    private final Map<String, Integer> personOrdinals; // person ID to ordinal
+    private final int[] fathers; // ordinal of each person's father or NONE
+    private final int[] mothers; // ordinal of each person's mother or NONE
+    private final int[] families; // the representative ordinal of each person's family
+    private final ThreadLocal<Scratch> scratch; // search marks reused by each thread's queries
+
+    /**
+     * Links every person to their parents by ordinal
+     *
+     * @param people every person in order of their ordinals
+     * @param personOrdinals a mapping of person ID to ordinal
+     */
+    RelationshipCalculator(List<Person> people, Map<String, Integer> personOrdinals) {
+        this.people = people;
+        this.personOrdinals = personOrdinals;
+        fathers = new int[people.size()];
+        mothers = new int[people.size()];
+        for (int i = 0; i < people.size(); i++) {
+            fathers[i] = ordinalOf(people.get(i).getFatherID());
+            mothers[i] = ordinalOf(people.get(i).getMotherID());
+        }
+
+        // join each person's family with their parents' families
+        families = new int[people.size()];
+        for (int i = 0; i < families.length; i++) {
+            families[i] = i;
+        }
+        for (int i = 0; i < families.length; i++) {
+            if (fathers[i] != NONE) {
+                joinFamilies(i, fathers[i]);
+            }
+            if (mothers[i] != NONE) {
+                joinFamilies(i, mothers[i]);
+            }
+        }
+        for (int i = 0; i < families.length; i++) {
+            families[i] = findFamily(i);
+        }
+
+        final int numPeople = people.size();
+        scratch = new ThreadLocal<Scratch>() {
+            @Override
+            protected Scratch initialValue() {
+                return new Scratch(numPeople);
+            }
+        };
+    }
+
+    /**
+     * Names what one person is to another, such as "Grandmother" or "Second Cousin Once Removed"
+     *
+     * @param fromID the ID of the person the relationship is described from
+     * @param toID the ID of the person whose relationship is described
+     * @return the name of the relationship or null if the people are not related
+     * within the ancestors searched
+     */
+    public String describe(String fromID, String toID) {
+        int from = ordinalOf(fromID);
+        int to = ordinalOf(toID);
+        if (from == NONE || to == NONE) {
+            return null;
+        }
+        if (from == to) {
+            return "Self";
+        }
+        Person person = people.get(to);
+        if (toID.equals(people.get(from).getSpouseID()) || fromID.equals(person.getSpouseID())) {
+            return "Spouse";
+        }
+        if (families[from] != families[to]) {
+            return null;
+        }
+        int[] generations = findCommonAncestor(from, to);
+        if (generations == null) {
+            return null;
+        }
+        return name(generations[0], generations[1], person.getGender());
+    }
+
+    /**
+     * Finds the nearest common ancestor of two people, counting each person as their own ancestor
+     * Both sides are searched one generation at a time, always advancing the shallower side,
+     * and the search ends once every undiscovered ancestor would be further than the best match
+     * or each side has visited MAX_ANCESTORS ancestors
+     *
+     * @param from the ordinal of the first person
+     * @param to the ordinal of the second person
+     * @return the generations from each person up to the common ancestor, or null if there is none
+     */
+    int[] findCommonAncestor(int from, int to) {
+        Scratch marks = scratch.get();
+        marks.nextQuery();
+        Side fromSide = new Side(from, marks.fromMarks, marks.fromGenerations, marks.query);
+        Side toSide = new Side(to, marks.toMarks, marks.toGenerations, marks.query);
+        int[] best = null;
+        int bestDistance = Integer.MAX_VALUE;
+
+        while (fromSide.canAdvance() || toSide.canAdvance()) {
+            Side side;
+            Side other;
+            if (!toSide.canAdvance()
+                    || (fromSide.canAdvance() && fromSide.generation <= toSide.generation)) {
+                side = fromSide;
+                other = toSide;
+            }
+            else {
+                side = toSide;
+                other = fromSide;
+            }
+
+            // any undiscovered match is at least one generation past the shallower finished side
+            int lowerBound = Math.min(fromSide.canAdvance() ? fromSide.generation + 1
+                    : Integer.MAX_VALUE, toSide.canAdvance() ? toSide.generation + 1
+                    : Integer.MAX_VALUE);
+            if (lowerBound >= bestDistance) {
+                break;
+            }
+
+            side.advance();
+            for (int i = 0; i < side.numFound; i++) {
+                int otherGeneration = other.generationOf(side.found[i]);
+                if (otherGeneration != NONE
+                        && side.generation + otherGeneration < bestDistance) {
+                    bestDistance = side.generation + otherGeneration;
+                    best = side == fromSide ? new int[] {side.generation, otherGeneration}
+                            : new int[] {otherGeneration, side.generation};
+                }
+            }
+        }
+        marks.numVisited = fromSide.numVisited + toSide.numVisited;
+        return best;
+    }
+
+    /**
+     * @return the number of ancestors visited by the calling thread's last query
+     */
+    int getLastVisited() {
+        return scratch.get().numVisited;
+    }
+
+    /**
+     * Names a relationship from the generations between each person and their common ancestor
+     *
+     * @param up the generations from the first person up to the common ancestor
+     * @param down the generations from the second person up to the common ancestor
+     * @param gender the gender of the second person ("m", "f" or other)
+     * @return the name of what the second person is to the first
+     */
+    static String name(int up, int down, String gender) {
+        boolean male = "m".equals(gender);
+        boolean female = "f".equals(gender);
+        if (down == 0) {
+            return grand(up, gendered(male, female, "Father", "Mother", "Parent"));
+        }
+        if (up == 0) {
+            return grand(down, gendered(male, female, "Son", "Daughter", "Child"));
+        }
+        if (up == 1 && down == 1) {
+            return gendered(male, female, "Brother", "Sister", "Sibling");
+        }
+        if (up == 1) {
+            return greats(down - 2) + gendered(male, female, "Nephew", "Niece", "Niece or Nephew");
+        }
+        if (down == 1) {
+            return greats(up - 2) + gendered(male, female, "Uncle", "Aunt", "Aunt or Uncle");
+        }
+
+        int degree = Math.min(up, down) - 1;
+        int removed = Math.abs(up - down);
+        String name = (degree <= ORDINALS.length ? ORDINALS[degree - 1] : numbered(degree))
+                + " Cousin";
+        if (removed > 0) {
+            name += " " + (removed <= TIMES.length ? TIMES[removed - 1] : removed + " Times")
+                    + " Removed";
+        }
+        return name;
+    }
+
+    private static String numbered(int number) {
+        if (number % 100 / 10 == 1) {
+            return number + "th";
+        }
+        switch (number % 10) {
+            case 1:
+                return number + "st";
+            case 2:
+                return number + "nd";
+            case 3:
+                return number + "rd";
+            default:
+                return number + "th";
+        }
+    }
+
+    private static String greats(int count) {
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            prefix.append("Great-");
+        }
+        return prefix.toString();
+    }
+
+    private static String grand(int generations, String name) {
+        if (generations < 2) {
+            return name;
+        }
+        return greats(generations - 2) + "Grand" + name.toLowerCase();
+    }
+
+    private static String gendered(boolean male, boolean female, String maleName,
+                                   String femaleName, String neutralName) {
+        return male ? maleName : female ? femaleName : neutralName;
+    }
+
+    private int findFamily(int person) {
+        int root = person;
+        while (families[root] != root) {
+            root = families[root];
+        }
+        while (families[person] != root) {
+            int next = families[person];
+            families[person] = root;
+            person = next;
+        }
+        return root;
+    }
+
+    private void joinFamilies(int a, int b) {
+        int rootA = findFamily(a);
+        int rootB = findFamily(b);
+        if (rootA != rootB) {
+            families[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    private int ordinalOf(String personID) {
+        Integer ordinal = personID == null ? null : personOrdinals.get(personID);
+        return ordinal == null ? NONE : ordinal;
+    }
+
+    /**
+     * Marks and generations of the ancestors found above each person in a query
+     * A mark only counts when it equals the current query number, so nothing is cleared
+     */
+    private static class Scratch {
+        private final int[] fromMarks;
+        private final int[] fromGenerations;
+        private final int[] toMarks;
+        private final int[] toGenerations;
+        private int query = 0;
+        private int numVisited = 0; // ancestors visited by the last query on both sides
+
+        private Scratch(int numPeople) {
+            fromMarks = new int[numPeople];
+            fromGenerations = new int[numPeople];
+            toMarks = new int[numPeople];
+            toGenerations = new int[numPeople];
+        }
+
+        private void nextQuery() {
+            query++;
+            if (query == 0) {
+                // the query number wrapped around, so old marks could match again
+                Arrays.fill(fromMarks, 0);
+                Arrays.fill(toMarks, 0);
+                query = 1;
+            }
+        }
+    }
+
+    /**
+     * The ancestors found so far above one person, with the generation each was found at
+     */
+    private class Side {
+        private final int[] marks;
+        private final int[] generations;
+        private final int query;
+        private int[] frontier = new int[8]; // parents of the last generation found
+        private int numFrontier = 0;
+        private int[] found = new int[8]; // ancestors first found in the last generation
+        private int numFound = 0;
+        private int generation = -1; // the last generation returned by advance
+        private int numVisited = 0; // ancestors found in every generation so far
+
+        private Side(int start, int[] marks, int[] generations, int query) {
+            this.marks = marks;
+            this.generations = generations;
+            this.query = query;
+            frontier[numFrontier++] = start;
+        }
+
+        private boolean canAdvance() {
+            return numFrontier > 0 && generation < MAX_GENERATIONS
+                    && numVisited < MAX_ANCESTORS;
+        }
+
+        private int generationOf(int person) {
+            return marks[person] == query ? generations[person] : NONE;
+        }
+
+        /**
+         * Records the next generation of ancestors in found and queues their parents
+         * A generation which would take the side past MAX_ANCESTORS is cut short
+         */
+        private void advance() {
+            generation++;
+            if (found.length < numFrontier) {
+                found = new int[frontier.length];
+            }
+            numFound = 0;
+            for (int i = 0; i < numFrontier && numVisited < MAX_ANCESTORS; i++) {
+                int person = frontier[i];
+                // pedigree collapse can reach the same ancestor twice; keep the nearest
+                if (marks[person] != query) {
+                    marks[person] = query;
+                    generations[person] = generation;
+                    found[numFound++] = person;
+                    numVisited++;
+                }
+            }
+            if (frontier.length < 2 * numFound) {
+                frontier = new int[2 * numFound];
+            }
+            numFrontier = 0;
+            for (int i = 0; i < numFound; i++) {
+                int person = found[i];
+                if (fathers[person] != NONE) {
+                    frontier[numFrontier++] = fathers[person];
+                }
+                if (mothers[person] != NONE) {
+                    frontier[numFrontier++] = mothers[person];
+                }
+            }
+        }
+    }
+}
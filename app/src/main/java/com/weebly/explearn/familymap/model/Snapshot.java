@@ -0,0 +1,555 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import dbModels.*;
+
+/**
+ * An immutable, versioned copy of the family tree and every index built over it
+ * The datacache publishes a new snapshot after each change, so a reader which holds
+ * a snapshot sees consistent data without locking while the next one is being built
+ * Each snapshot has its own dictionary, which is never modified once the snapshot is published
+ */
+final class Snapshot {
+
+    static final int NUM_COLORS = 27; // colors in colors.xml given out to event and line types
+
+    private static final int MAX_CLUSTER_PYRAMIDS = 2; // clusters kept for recent filters
+
+    final long version; // increases with every published snapshot
+    final long filterVersion; // increases only when the events on the map change
+    final Person user; // the current user
+    final StringDictionary dictionary; // shared instances of repeated strings
+    final int[] typeColors; // color number of each lowercase type code, or 0 if it has none
+    final List<Person> people; // people by ordinal
+    final Map<String, Integer> personOrdinals; // person ID to ordinal
+    final Map<String, Person> allPeople; // all people
+    final Map<String, Event> allEvents; // all events
+    final Map<String, List<Person>> allChildren; // children of each parent
+    final Map<String, List<Event>> allLifeEvents; // all life events of each person in order
+    final int[] anchorEvents; // ordinal of each person's first life event, or -1, by ordinal
+    final EventStore eventStore; // columns of event fields indexed by event ordinal
+    final FilterIndex filterIndex; // bitsets of the people and events under each filter
+    final RelationshipCalculator relationships; // parent links by ordinal for naming relationships
+    final SpatialGrid spatialGrid; // event ordinals bucketed by map coordinates
+    final YearIndex yearIndex; // event ordinals sorted by year
+    final List<String[]> personNames; // lowercase first and last names by ordinal
+    final TrigramIndex personSearchIndex; // trigrams of names to person ordinals
+    final TrigramIndex eventSearchIndex; // trigrams of types, places and years to event ordinals
+    final CompletionTrie completions; // names and places ranked for type-ahead completion
+    final BitSet visibleEvents; // ordinals of the events which appear on the map
+    final Map<String, Event> mapEvents; // a read-only view of the events which appear on the map
+    final Map<String, List<Event>> visibleLifeEvents; // memoized life events on the map by person
+    final Map<BitSet, ClusterPyramid> clusterPyramids; // recent clusters by events on the map
+    private volatile ClusterPyramid clusterPyramid; // built on first use, only the map reads it
+
+    /**
+     * Creates the snapshot of an empty family tree
+     * Every type already in the dictionary (such as the types of lines) is given a color
+     *
+     * @param dictionary the dictionary of the empty family tree, which is never modified
+     */
+    Snapshot(StringDictionary dictionary) {
+        this(0, 0, null, dictionary, colorTypes(dictionary), Collections.<Person>emptyList(),
+                Collections.<String, Integer>emptyMap(), Collections.<String, Person>emptyMap(),
+                Collections.<String, Event>emptyMap(),
+                Collections.<String, List<Person>>emptyMap(),
+                Collections.<String, List<Event>>emptyMap(),
+                new int[0], new EventStore(dictionary), null, null, null, null,
+                Collections.<String[]>emptyList(),
+                new TrigramIndex(), new TrigramIndex(), new CompletionTrie(), new BitSet(),
+                new ConcurrentHashMap<String, List<Event>>(), newClusterPyramids());
+    }
+
+    /**
+     * Creates a snapshot from read-only collections, building any index passed as null
+     */
+    private Snapshot(long version, long filterVersion, Person user, StringDictionary dictionary,
+                     int[] typeColors, List<Person> people, Map<String, Integer> personOrdinals,
+                     Map<String, Person> allPeople, Map<String, Event> allEvents,
+                     Map<String, List<Person>> allChildren,
+                     Map<String, List<Event>> allLifeEvents, int[] anchorEvents,
+                     EventStore eventStore,
+                     FilterIndex filterIndex, RelationshipCalculator relationships,
+                     SpatialGrid spatialGrid, YearIndex yearIndex, List<String[]> personNames,
+                     TrigramIndex personSearchIndex, TrigramIndex eventSearchIndex,
+                     CompletionTrie completions, BitSet visibleEvents,
+                     Map<String, List<Event>> visibleLifeEvents,
+                     Map<BitSet, ClusterPyramid> clusterPyramids) {
+        this.version = version;
+        this.filterVersion = filterVersion;
+        this.user = user;
+        this.dictionary = dictionary;
+        this.typeColors = typeColors;
+        this.people = people;
+        this.personOrdinals = personOrdinals;
+        this.allPeople = allPeople;
+        this.allEvents = allEvents;
+        this.allChildren = allChildren;
+        this.allLifeEvents = allLifeEvents;
+        this.anchorEvents = anchorEvents;
+        this.eventStore = eventStore;
+        this.filterIndex = filterIndex != null ? filterIndex
+                : new FilterIndex(people, personOrdinals, eventStore, user);
+        this.relationships = relationships != null ? relationships
+                : new RelationshipCalculator(this.people, this.personOrdinals);
+        this.spatialGrid = spatialGrid != null ? spatialGrid
+                : new SpatialGrid(eventStore, SpatialGrid.DEFAULT_CELL_DEGREES);
+        this.yearIndex = yearIndex != null ? yearIndex : new YearIndex(eventStore);
+        this.personNames = personNames;
+        this.personSearchIndex = personSearchIndex;
+        this.eventSearchIndex = eventSearchIndex;
+        this.completions = completions;
+        this.visibleEvents = visibleEvents;
+        this.visibleLifeEvents = visibleLifeEvents;
+        this.clusterPyramids = clusterPyramids;
+        mapEvents = new VisibleEvents();
+    }
+
+    /**
+     * Creates the next snapshot with the same family tree but a different set of events on the map
+     * If the events on the map have not actually changed, this snapshot is kept instead
+     *
+     * @param visible the ordinals of the events which appear on the map
+     * @return the next snapshot
+     */
+    Snapshot withVisibleEvents(BitSet visible) {
+        if (visible.equals(visibleEvents)) {
+            return this;
+        }
+        return new Snapshot(version + 1, filterVersion + 1, user, dictionary, typeColors, people,
+                personOrdinals, allPeople, allEvents, allChildren, allLifeEvents, anchorEvents,
+                eventStore,
+                filterIndex, relationships, spatialGrid, yearIndex, personNames,
+                personSearchIndex,
+                eventSearchIndex, completions, visible,
+                new ConcurrentHashMap<String, List<Event>>(), clusterPyramids);
+    }
+
+    /**
+     * Creates the next snapshot for a new user, rebuilding the filters around them
+     * The events on the map are left as they are until the filters are next changed
+     *
+     * @param person the new user
+     * @return the next snapshot
+     */
+    Snapshot withUser(Person person) {
+        return new Snapshot(version + 1, filterVersion, person, dictionary, typeColors, people,
+                personOrdinals, allPeople, allEvents, allChildren, allLifeEvents, anchorEvents,
+                eventStore,
+                null, relationships, spatialGrid, yearIndex, personNames, personSearchIndex,
+                eventSearchIndex, completions, visibleEvents, visibleLifeEvents, clusterPyramids);
+    }
+
+    /**
+     * Finds the color given to a type of event or line, ignoring case
+     *
+     * @param type the type of an event or line
+     * @return the number of the type's color, or 0 if no such type has been given one
+     */
+    int getTypeColor(String type) {
+        int code = dictionary.getCode(type);
+        if (code == StringDictionary.NONE && type != null) {
+            code = dictionary.getCode(type.toLowerCase());
+        }
+        code = dictionary.getLowerCode(code);
+        return code != StringDictionary.NONE && code < typeColors.length ? typeColors[code] : 0;
+    }
+
+    boolean isEventVisible(String eventID) {
+        int ordinal = eventStore.getOrdinal(eventID);
+        return ordinal >= 0 && visibleEvents.get(ordinal);
+    }
+
+    /**
+     * Finds the first life event of a person, as long as it appears on the map
+     * A person's events are either all shown or all filtered, so one bit decides
+     *
+     * @param personID the ID of the queried person
+     * @return the person's first life event, or null if they have none on the map
+     */
+    Event getAnchorEvent(String personID) {
+        Integer personOrdinal = personID != null ? personOrdinals.get(personID) : null;
+        if (personOrdinal == null || personOrdinal >= anchorEvents.length) {
+            return null;
+        }
+        int ordinal = anchorEvents[personOrdinal];
+        return ordinal >= 0 && visibleEvents.get(ordinal) ? eventStore.getEvent(ordinal) : null;
+    }
+
+    /**
+     * Retrieves the life events of a person which appear on the map, in chronological order
+     * The result is memoized until the family tree or the events on the map change
+     *
+     * @param personID the ID of the queried person
+     * @return a read-only chronologically ordered list of event objects
+     */
+    List<Event> getVisibleLifeEvents(String personID) {
+        if (personID == null) {
+            return Collections.emptyList();
+        }
+        List<Event> lifeEvents = visibleLifeEvents.get(personID);
+        if (lifeEvents == null) {
+            lifeEvents = allLifeEvents.get(personID);
+            // a person's events are either all filtered or all shown on the map
+            if (lifeEvents == null || lifeEvents.isEmpty()
+                    || !isEventVisible(lifeEvents.get(0).getEventID())) {
+                lifeEvents = Collections.emptyList();
+            }
+            visibleLifeEvents.put(personID, lifeEvents);
+        }
+        return lifeEvents;
+    }
+
+    /**
+     * Retrieves the clusters of the events on the map, building them on first use
+     * Clusters are shared with recent snapshots of the same family tree that showed the
+     * same events, so switching a filter off and on again does not rebuild them
+     * Building takes a while for a large family tree, so it should not be called on the main thread
+     *
+     * @return the clusters of every zoom level
+     */
+    ClusterPyramid getClusterPyramid() {
+        ClusterPyramid pyramid = peekClusterPyramid();
+        if (pyramid == null) {
+            synchronized (this) {
+                pyramid = peekClusterPyramid();
+                if (pyramid == null) {
+                    pyramid = new ClusterPyramid(eventStore, visibleEvents);
+                    clusterPyramids.put(visibleEvents, pyramid);
+                    clusterPyramid = pyramid;
+                }
+            }
+        }
+        return pyramid;
+    }
+
+    /**
+     * @return the clusters of the events on the map, or null if they have not been built yet
+     */
+    ClusterPyramid peekClusterPyramid() {
+        ClusterPyramid pyramid = clusterPyramid;
+        if (pyramid == null) {
+            // visible event bitsets are never modified once published, so they are safe keys
+            pyramid = clusterPyramids.get(visibleEvents);
+            clusterPyramid = pyramid;
+        }
+        return pyramid;
+    }
+
+    /**
+     * @return the colors of every type in a dictionary, given out in order of their codes
+     */
+    private static int[] colorTypes(StringDictionary dictionary) {
+        int[] typeColors = new int[dictionary.size()];
+        int numColored = 0;
+        for (int code = 0; code < typeColors.length; code++) {
+            int lowerCode = dictionary.getLowerCode(code);
+            if (typeColors[lowerCode] == 0) {
+                typeColors[lowerCode] = numColored++ % NUM_COLORS + 1;
+            }
+        }
+        return typeColors;
+    }
+
+    /**
+     * @return an empty map of recently built clusters which drops the least recently used
+     */
+    private static Map<BitSet, ClusterPyramid> newClusterPyramids() {
+        return Collections.synchronizedMap(new LinkedHashMap<BitSet, ClusterPyramid>(
+                MAX_CLUSTER_PYRAMIDS + 1, 1, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BitSet, ClusterPyramid> eldest) {
+                return size() > MAX_CLUSTER_PYRAMIDS;
+            }
+        });
+    }
+
+    /**
+     * Collects the people and events to be added to a snapshot, then builds the next snapshot
+     * Ordinals of people and events already in the snapshot never change, and anything added
+     * is shown on the map until the filters are next changed
+     * Each build rebuilds the indexes over whatever it changed, so people and events should be
+     * added in as few builds as possible; indexes over only people or only events are kept
+     * from the previous snapshot when a build does not change them
+     */
+    static class Builder {
+        private final Snapshot previous;
+        private ArrayList<Person> people; // copied from the previous snapshot on first person
+        private HashMap<String, Integer> personOrdinals;
+        private HashMap<String, Person> allPeople;
+        private HashMap<String, Event> allEvents; // copied on first event, as are those below
+        private StringDictionary dictionary;
+        private EventStore eventStore;
+        private BitSet visibleEvents;
+
+        Builder(Snapshot previous) {
+            this.previous = previous;
+        }
+
+        void addPerson(Person person) {
+            if (people == null) {
+                people = new ArrayList<>(previous.people);
+                personOrdinals = new HashMap<>(previous.personOrdinals);
+                allPeople = new HashMap<>(previous.allPeople);
+            }
+            allPeople.put(person.getPersonID(), person);
+            Integer ordinal = personOrdinals.get(person.getPersonID());
+            if (ordinal == null) {
+                personOrdinals.put(person.getPersonID(), people.size());
+                people.add(person);
+            }
+            else {
+                people.set(ordinal, person);
+            }
+        }
+
+        void addEvent(Event event) {
+            if (eventStore == null) {
+                allEvents = new HashMap<>(previous.allEvents);
+                dictionary = new StringDictionary(previous.dictionary);
+                eventStore = new EventStore(previous.eventStore, dictionary);
+                visibleEvents = (BitSet) previous.visibleEvents.clone();
+            }
+            allEvents.put(event.getEventID(), event);
+            visibleEvents.set(eventStore.add(event));
+        }
+
+        /**
+         * Rebuilds the indexes over the people or events which changed
+         *
+         * @return the next snapshot, which is never modified afterwards,
+         * or the previous snapshot if nothing was added
+         */
+        Snapshot build() {
+            boolean peopleChanged = people != null;
+            boolean eventsChanged = eventStore != null;
+            if (!peopleChanged && !eventsChanged) {
+                return previous;
+            }
+            List<Person> people = peopleChanged ? Collections.unmodifiableList(this.people)
+                    : previous.people;
+            Map<String, Integer> personOrdinals = peopleChanged
+                    ? Collections.unmodifiableMap(this.personOrdinals) : previous.personOrdinals;
+            Map<String, Person> allPeople = peopleChanged
+                    ? Collections.unmodifiableMap(this.allPeople) : previous.allPeople;
+            Map<String, Event> allEvents = eventsChanged
+                    ? Collections.unmodifiableMap(this.allEvents) : previous.allEvents;
+            StringDictionary dictionary = eventsChanged ? this.dictionary : previous.dictionary;
+            EventStore eventStore = eventsChanged ? this.eventStore : previous.eventStore;
+            BitSet visibleEvents = eventsChanged ? this.visibleEvents : previous.visibleEvents;
+
+            List<String[]> personNames = previous.personNames;
+            TrigramIndex personSearchIndex = previous.personSearchIndex;
+            Map<String, List<Person>> allChildren = previous.allChildren;
+            RelationshipCalculator relationships = previous.relationships;
+            if (peopleChanged) {
+                ArrayList<String[]> names = new ArrayList<>();
+                personSearchIndex = new TrigramIndex();
+                HashMap<String, List<Person>> children = new HashMap<>();
+                for (int i = 0; i < people.size(); i++) {
+                    Person person = people.get(i);
+                    String[] personName = {toLowerCase(person.getFirstName()),
+                            toLowerCase(person.getLastName())};
+                    names.add(personName);
+                    personSearchIndex.add(i, personName);
+                    addChild(children, person.getMotherID(), person);
+                    addChild(children, person.getFatherID(), person);
+                }
+                personSearchIndex.compact();
+                personNames = Collections.unmodifiableList(names);
+                allChildren = Collections.unmodifiableMap(children);
+                relationships = null;
+            }
+
+            TrigramIndex eventSearchIndex = previous.eventSearchIndex;
+            Map<String, List<Event>> allLifeEvents = previous.allLifeEvents;
+            int[] typeColors = previous.typeColors;
+            SpatialGrid spatialGrid = previous.spatialGrid;
+            YearIndex yearIndex = previous.yearIndex;
+            Map<BitSet, ClusterPyramid> clusterPyramids = previous.clusterPyramids;
+            if (eventsChanged) {
+                eventSearchIndex = new TrigramIndex();
+                HashMap<String, List<Integer>> lifeOrdinals = new HashMap<>();
+                for (int i = 0; i < eventStore.size(); i++) {
+                    Event event = eventStore.getEvent(i);
+                    eventSearchIndex.add(i,
+                            dictionary.getLowerString(eventStore.getTypeCode(i)),
+                            dictionary.getLowerString(eventStore.getCityCode(i)),
+                            dictionary.getLowerString(eventStore.getCountryCode(i)),
+                            String.valueOf(event.getYear()));
+                    List<Integer> ordinals = lifeOrdinals.get(event.getPersonID());
+                    if (ordinals == null) {
+                        ordinals = new ArrayList<>();
+                        lifeOrdinals.put(event.getPersonID(), ordinals);
+                    }
+                    ordinals.add(i);
+                }
+                eventSearchIndex.compact();
+                LifeEventComparator lifeOrder = new LifeEventComparator(eventStore, dictionary);
+                HashMap<String, List<Event>> lifeEventLists = new HashMap<>();
+                for (Map.Entry<String, List<Integer>> entry : lifeOrdinals.entrySet()) {
+                    List<Integer> ordinals = entry.getValue();
+                    Collections.sort(ordinals, lifeOrder);
+                    ArrayList<Event> lifeEvents = new ArrayList<>(ordinals.size());
+                    for (int ordinal : ordinals) {
+                        lifeEvents.add(eventStore.getEvent(ordinal));
+                    }
+                    lifeEventLists.put(entry.getKey(), Collections.unmodifiableList(lifeEvents));
+                }
+                allLifeEvents = Collections.unmodifiableMap(lifeEventLists);
+                typeColors = colorNewTypes(dictionary, eventStore, previous.typeColors);
+                spatialGrid = null;
+                yearIndex = null;
+                clusterPyramids = newClusterPyramids();
+            }
+
+            int[] anchorEvents = new int[people.size()];
+            Arrays.fill(anchorEvents, -1);
+            for (Map.Entry<String, List<Event>> entry : allLifeEvents.entrySet()) {
+                Integer personOrdinal = personOrdinals.get(entry.getKey());
+                if (personOrdinal != null) {
+                    anchorEvents[personOrdinal] =
+                            eventStore.getOrdinal(entry.getValue().get(0).getEventID());
+                }
+            }
+
+            return new Snapshot(previous.version + 1, previous.filterVersion + 1, previous.user,
+                    dictionary, typeColors, people, personOrdinals, allPeople, allEvents,
+                    allChildren, allLifeEvents, anchorEvents, eventStore, null, relationships,
+                    spatialGrid, yearIndex, personNames, personSearchIndex, eventSearchIndex,
+                    buildCompletions(people, dictionary, eventStore, allLifeEvents),
+                    visibleEvents, new ConcurrentHashMap<String, List<Event>>(), clusterPyramids);
+        }
+
+        /**
+         * Gives a color to each event type which has none yet, in order of the events,
+         * keeping the colors already given so a type's color never changes until logout
+         */
+        private static int[] colorNewTypes(StringDictionary dictionary, EventStore eventStore,
+                                           int[] previousColors) {
+            int[] typeColors = Arrays.copyOf(previousColors,
+                    Math.max(previousColors.length, dictionary.size()));
+            int numColored = 0;
+            for (int color : previousColors) {
+                if (color != 0) {
+                    numColored++;
+                }
+            }
+            for (int i = 0; i < eventStore.size(); i++) {
+                int code = dictionary.getLowerCode(eventStore.getTypeCode(i));
+                if (code != StringDictionary.NONE && typeColors[code] == 0) {
+                    typeColors[code] = numColored++ % NUM_COLORS + 1;
+                }
+            }
+            return typeColors;
+        }
+
+        /**
+         * Builds the completion trie from every person and place, weighted by number of events
+         */
+        private static CompletionTrie buildCompletions(List<Person> people,
+                                                       StringDictionary dictionary,
+                                                       EventStore eventStore,
+                                                       Map<String, List<Event>> allLifeEvents) {
+            CompletionTrie trie = new CompletionTrie();
+            for (Person person : people) {
+                List<Event> lifeEvents = allLifeEvents.get(person.getPersonID());
+                trie.add(person.getFirstName() + " " + person.getLastName(),
+                        lifeEvents == null ? 0 : lifeEvents.size());
+            }
+
+            int[] placeCounts = new int[dictionary.size()];
+            for (int i = 0; i < eventStore.size(); i++) {
+                if (eventStore.getCityCode(i) != StringDictionary.NONE) {
+                    placeCounts[eventStore.getCityCode(i)]++;
+                }
+                if (eventStore.getCountryCode(i) != StringDictionary.NONE) {
+                    placeCounts[eventStore.getCountryCode(i)]++;
+                }
+            }
+            for (int code = 0; code < placeCounts.length; code++) {
+                if (placeCounts[code] > 0) {
+                    trie.add(dictionary.getString(code), placeCounts[code]);
+                }
+            }
+
+            trie.rank();
+            return trie;
+        }
+
+        private static String toLowerCase(String string) {
+            return string == null ? "" : string.toLowerCase();
+        }
+
+        private static void addChild(Map<String, List<Person>> allChildren, String parentID,
+                                     Person child) {
+            if (parentID != null) {
+                List<Person> children = allChildren.get(parentID);
+                if (children == null) {
+                    children = new ArrayList<>();
+                    allChildren.put(parentID, children);
+                }
+                children.add(child);
+            }
+        }
+    }
+
+    /**
+     * A read-only map of event IDs to the events whose ordinals are visible in this snapshot
+     */
+    private class VisibleEvents extends AbstractMap<String, Event> {
+
+        @Override
+        public Event get(Object key) {
+            int ordinal = eventStore.getOrdinal(key);
+            if (ordinal < 0 || !visibleEvents.get(ordinal)) {
+                return null;
+            }
+            return eventStore.getEvent(ordinal);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int ordinal = eventStore.getOrdinal(key);
+            return ordinal >= 0 && visibleEvents.get(ordinal);
+        }
+
+        @Override
+        public int size() {
+            return visibleEvents.cardinality();
+        }
+
+        @Override
+        public Set<Entry<String, Event>> entrySet() {
+            return new AbstractSet<Entry<String, Event>>() {
+                @Override
+                public Iterator<Entry<String, Event>> iterator() {
+                    return new Iterator<Entry<String, Event>>() {
+                        private int next = visibleEvents.nextSetBit(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return next >= 0 && next < eventStore.size();
+                        }
+
+                        @Override
+                        public Entry<String, Event> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Event event = eventStore.getEvent(next);
+                            next = visibleEvents.nextSetBit(next + 1);
+                            return new SimpleImmutableEntry<>(event.getEventID(), event);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return VisibleEvents.this.size();
+                }
+            };
+        }
+    }
+}
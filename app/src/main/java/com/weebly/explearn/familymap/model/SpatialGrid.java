@@ -0,0 +1,131 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+
+/**
+ * A uniform grid over the coordinates of every event, used to find the events
+ * inside the part of the map on screen without checking every event
+ * Event ordinals are bucketed by cell in one array (cell by cell, like a counting sort),
+ * so a cell's events are a contiguous range found from the start of each cell
+ */
+public class SpatialGrid {
+
+    public static final double DEFAULT_CELL_DEGREES = 1.0;
+
+    private final EventStore eventStore; // the coordinates of each event by ordinal
+    private final double cellDegrees; // the width and height of a cell
+    private final int rows; // cells from south to north
+    private final int columns; // cells from west to east
+    private final int[] cellStarts; // index of each cell's first ordinal, with a final end index
+    private final int[] ordinals; // event ordinals grouped by cell
+
+    /**
+     * Buckets every event in a store by the cell containing its coordinates
+     *
+     * @param eventStore every event
+     * @param cellDegrees the width and height of a cell in degrees
+     */
+    public SpatialGrid(EventStore eventStore, double cellDegrees) {
+        this.eventStore = eventStore;
+        this.cellDegrees = cellDegrees;
+        rows = Math.max(1, (int) Math.ceil(180 / cellDegrees));
+        columns = Math.max(1, (int) Math.ceil(360 / cellDegrees));
+
+        int numEvents = eventStore.size();
+        int[] cells = new int[numEvents];
+        cellStarts = new int[rows * columns + 1];
+        for (int i = 0; i < numEvents; i++) {
+            cells[i] = rowOf(eventStore.getLatitude(i)) * columns
+                    + columnOf(eventStore.getLongitude(i));
+            cellStarts[cells[i] + 1]++;
+        }
+        for (int cell = 0; cell < rows * columns; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+        ordinals = new int[numEvents];
+        int[] next = Arrays.copyOf(cellStarts, rows * columns);
+        for (int i = 0; i < numEvents; i++) {
+            ordinals[next[cells[i]]++] = i;
+        }
+    }
+
+    /**
+     * Finds the visible events inside a box, nearest cells to the center of the box first
+     * A box whose west edge is east of its east edge crosses the 180th meridian
+     *
+     * @param south the southern latitude of the box
+     * @param west the western longitude of the box
+     * @param north the northern latitude of the box
+     * @param east the eastern longitude of the box
+     * @param visible the ordinals of the events which appear on the map
+     * @param limit the most events to be returned
+     * @return the ordinals of up to limit events inside the box
+     */
+    public int[] query(double south, double west, double north, double east, BitSet visible,
+                       int limit) {
+        int southRow = rowOf(south);
+        int northRow = rowOf(north);
+        // a box crossing the 180th meridian continues past 180 degrees east
+        double unwrappedEast = west <= east ? east : east + 360;
+        long westIndex = (long) Math.floor((west + 180) / cellDegrees);
+        long eastIndex = (long) Math.floor((unwrappedEast + 180) / cellDegrees);
+        int numColumns = (int) Math.min(columns, eastIndex - westIndex + 1);
+        int westColumn = columnOf(west);
+
+        // visit the cells in order of distance from the center cell
+        int numCells = (northRow - southRow + 1) * numColumns;
+        long[] cellsByDistance = new long[Math.max(0, numCells)];
+        int centerRow = (southRow + northRow) / 2;
+        int centerColumn = numColumns / 2;
+        int numQueued = 0;
+        for (int row = southRow; row <= northRow; row++) {
+            for (int offset = 0; offset < numColumns; offset++) {
+                int column = (westColumn + offset) % columns;
+                long rowDistance = row - centerRow;
+                long columnDistance = offset - centerColumn;
+                long distance = rowDistance * rowDistance + columnDistance * columnDistance;
+                // pack the distance above the cell so sorting orders by distance
+                cellsByDistance[numQueued++] = (distance << 32) | (row * columns + column);
+            }
+        }
+        Arrays.sort(cellsByDistance, 0, numQueued);
+
+        int[] found = new int[Math.min(limit, 64)];
+        int numFound = 0;
+        for (int i = 0; i < numQueued && numFound < limit; i++) {
+            int cell = (int) cellsByDistance[i];
+            for (int j = cellStarts[cell]; j < cellStarts[cell + 1] && numFound < limit; j++) {
+                int ordinal = ordinals[j];
+                if (visible.get(ordinal) && contains(south, west, north, east, ordinal)) {
+                    if (numFound == found.length) {
+                        found = Arrays.copyOf(found, Math.min(limit, found.length * 2));
+                    }
+                    found[numFound++] = ordinal;
+                }
+            }
+        }
+        return Arrays.copyOf(found, numFound);
+    }
+
+    private boolean contains(double south, double west, double north, double east, int ordinal) {
+        double latitude = eventStore.getLatitude(ordinal);
+        double longitude = eventStore.getLongitude(ordinal);
+        if (latitude < south || latitude > north) {
+            return false;
+        }
+        if (west <= east) {
+            return longitude >= west && longitude <= east;
+        }
+        return longitude >= west || longitude <= east;
+    }
+
+    private int rowOf(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / cellDegrees);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+
+    private int columnOf(double longitude) {
+        int column = (int) Math.floor((longitude + 180) / cellDegrees) % columns;
+        return column < 0 ? column + columns : column;
+    }
+}
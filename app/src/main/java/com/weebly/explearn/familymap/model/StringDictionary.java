@@ -0,0 +1,132 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+import dbModels.*;
+
+/**
+ * A dictionary which interns the strings repeated across a family tree
+ * (event types, cities, countries and usernames)
+ * Each distinct string is stored once and given a small int code,
+ * along with the code of its lowercase form so case-insensitive comparisons work on ints
+ * A dictionary is filled while a snapshot is built and never modified once it is published,
+ * so reading it takes no lock; the next snapshot interns into a copy, which keeps every code
+ */
+public class StringDictionary {
+
+    public static final int NONE = -1; // the code of a null or unknown string
+
+    private final Map<String, Integer> codes; // string to code
+    private final ArrayList<String> strings; // strings by code
+    private int[] lowerCodes; // the code of each string's lowercase form
+
+    public StringDictionary() {
+        codes = new HashMap<>();
+        strings = new ArrayList<>();
+        lowerCodes = new int[16];
+    }
+
+    /**
+     * Creates a copy of another dictionary which can have more strings added to it
+     *
+     * @param other the dictionary to be copied
+     */
+    public StringDictionary(StringDictionary other) {
+        codes = new HashMap<>(other.codes);
+        strings = new ArrayList<>(other.strings);
+        lowerCodes = other.lowerCodes.clone();
+    }
+
+    /**
+     * Retrieves the code of a string, adding the string if it is new
+     *
+     * @param string the string to be interned
+     * @return the code of the string
+     */
+    public int intern(String string) {
+        if (string == null) {
+            return NONE;
+        }
+        Integer code = codes.get(string);
+        if (code != null) {
+            return code;
+        }
+
+        code = strings.size();
+        codes.put(string, code);
+        strings.add(string);
+        if (code == lowerCodes.length) {
+            lowerCodes = Arrays.copyOf(lowerCodes, code * 2);
+        }
+        String lower = string.toLowerCase();
+        int lowerCode = lower.equals(string) ? code : intern(lower);
+        lowerCodes[code] = lowerCode;
+        return code;
+    }
+
+    /**
+     * Retrieves the code of a string without adding it
+     *
+     * @param string the queried string
+     * @return the code of the string or NONE if it has not been interned
+     */
+    public int getCode(String string) {
+        Integer code = string == null ? null : codes.get(string);
+        return code == null ? NONE : code;
+    }
+
+    /**
+     * @param code the code of an interned string
+     * @return the single shared instance of the string
+     */
+    public String getString(int code) {
+        return code == NONE ? null : strings.get(code);
+    }
+
+    /**
+     * @param code the code of an interned string
+     * @return the code of the string's lowercase form
+     */
+    public int getLowerCode(int code) {
+        return code == NONE ? NONE : lowerCodes[code];
+    }
+
+    /**
+     * @param code the code of an interned string
+     * @return the lowercase form of the string
+     */
+    public String getLowerString(int code) {
+        return getString(getLowerCode(code));
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Replaces an event's repeated strings with their shared instances
+     *
+     * @param event the event to be interned
+     */
+    public void internEvent(Event event) {
+        event.setEventType(getString(intern(event.getEventType())));
+        event.setCity(getString(intern(event.getCity())));
+        event.setCountry(getString(intern(event.getCountry())));
+        event.setAssociatedUsername(getString(intern(event.getAssociatedUsername())));
+    }
+
+    /**
+     * Replaces a person's repeated strings with their shared instances
+     *
+     * @param person the person to be interned
+     */
+    public void internPerson(Person person) {
+        person.setAssociatedUsername(getString(intern(person.getAssociatedUsername())));
+        person.setGender(getString(intern(person.getGender())));
+    }
+
+    public void clear() {
+        codes.clear();
+        strings.clear();
+        lowerCodes = new int[16];
+    }
+}
@@ -0,0 +1,142 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+
+/**
+ * An inverted index from every three character substring (trigram) of some lowercase fields
+ * to the IDs of the records containing it
+ * A substring query of three or more characters only needs to intersect the posting lists
+ * of its own trigrams, which gives a small set of candidates to check
+ */
+class TrigramIndex {
+
+    static final int MIN_QUERY_LENGTH = 3;
+
+    private final Map<Long, Postings> postings; // trigram to the IDs of records containing it
+
+    TrigramIndex() {
+        postings = new HashMap<>();
+    }
+
+    /**
+     * Indexes every trigram of a record's fields
+     * Trigrams never span two fields, so a match must lie within a single field
+     *
+     * @param id the ID of the record
+     * @param fields the lowercase fields of the record
+     */
+    void add(int id, String... fields) {
+        for (String field : fields) {
+            if (field == null) {
+                continue;
+            }
+            for (int i = 0; i + MIN_QUERY_LENGTH <= field.length(); i++) {
+                long trigram = trigram(field, i);
+                Postings list = postings.get(trigram);
+                if (list == null) {
+                    list = new Postings();
+                    postings.put(trigram, list);
+                }
+                list.add(id);
+            }
+        }
+    }
+
+    /**
+     * Finds the records which contain every trigram of a query
+     * Each candidate still needs to be checked since its trigrams may not be adjacent
+     *
+     * @param query a lowercase query at least MIN_QUERY_LENGTH characters long
+     * @return the sorted IDs of the candidate records
+     */
+    int[] search(String query) {
+        ArrayList<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + MIN_QUERY_LENGTH <= query.length(); i++) {
+            Postings list = postings.get(trigram(query, i));
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        Collections.sort(lists, new Comparator<Postings>() {
+            @Override
+            public int compare(Postings a, Postings b) {
+                return Integer.compare(a.size, b.size);
+            }
+        });
+
+        // intersect from the shortest list so the candidates only ever shrink
+        Postings first = lists.get(0);
+        first.compact();
+        int[] candidates = Arrays.copyOf(first.ids, first.size);
+        int numCandidates = candidates.length;
+        for (int i = 1; i < lists.size() && numCandidates > 0; i++) {
+            Postings list = lists.get(i);
+            list.compact();
+            int kept = 0;
+            for (int j = 0; j < numCandidates; j++) {
+                if (Arrays.binarySearch(list.ids, 0, list.size, candidates[j]) >= 0) {
+                    candidates[kept++] = candidates[j];
+                }
+            }
+            numCandidates = kept;
+        }
+        return Arrays.copyOf(candidates, numCandidates);
+    }
+
+    /**
+     * Sorts every posting list so that searches no longer modify the index
+     * Called before an index is shared between threads
+     */
+    void compact() {
+        for (Postings list : postings.values()) {
+            list.compact();
+        }
+    }
+
+    void clear() {
+        postings.clear();
+    }
+
+    private static long trigram(String string, int start) {
+        return ((long) string.charAt(start) << 32) | ((long) string.charAt(start + 1) << 16)
+                | string.charAt(start + 2);
+    }
+
+    /**
+     * A growable list of record IDs which is sorted and deduplicated before it is read
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+        private boolean sorted = true;
+
+        private void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size > 0 && ids[size - 1] > id) {
+                sorted = false;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private void compact() {
+            if (sorted) {
+                return;
+            }
+            Arrays.sort(ids, 0, size);
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (kept == 0 || ids[kept - 1] != ids[i]) {
+                    ids[kept++] = ids[i];
+                }
+            }
+            size = kept;
+            sorted = true;
+        }
+    }
+}
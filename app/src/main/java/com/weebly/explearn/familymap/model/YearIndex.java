@@ -0,0 +1,158 @@
+package com.weebly.explearn.familymap.model;
+
+import java.util.*;
+
+/**
+ * Every event ordinal sorted by the year of the event, used to find the events in a range
+ * of years without checking every event
+ * The years are kept in one array with the ordinals in a parallel array, so a range of years
+ * is found by two binary searches and its events are a contiguous run of ordinals
+ */
+public class YearIndex {
+
+    private final EventStore eventStore; // the year and coordinates of each event by ordinal
+    private final int[] years; // the year of each event, ascending
+    private final int[] ordinals; // event ordinals in the same order as their years
+
+    /**
+     * Sorts every event in a store by year, and by ordinal within a year
+     *
+     * @param eventStore every event
+     */
+    public YearIndex(EventStore eventStore) {
+        this.eventStore = eventStore;
+        int numEvents = eventStore.size();
+        // pack the year above the ordinal so one primitive sort orders by both
+        long[] packed = new long[numEvents];
+        for (int i = 0; i < numEvents; i++) {
+            packed[i] = ((long) eventStore.getYear(i) << 32) | i;
+        }
+        Arrays.sort(packed);
+        years = new int[numEvents];
+        ordinals = new int[numEvents];
+        for (int i = 0; i < numEvents; i++) {
+            years[i] = (int) (packed[i] >> 32);
+            ordinals[i] = (int) packed[i];
+        }
+    }
+
+    /**
+     * @return the year of the earliest event, or 0 if there are no events
+     */
+    public int getFirstYear() {
+        return years.length > 0 ? years[0] : 0;
+    }
+
+    /**
+     * @return the year of the latest event, or 0 if there are no events
+     */
+    public int getLastYear() {
+        return years.length > 0 ? years[years.length - 1] : 0;
+    }
+
+    /**
+     * Finds the visible events in a range of years, earliest first
+     *
+     * @param fromYear the first year of the range
+     * @param toYear the last year of the range
+     * @param visible the ordinals of the events which appear on the map
+     * @param limit the most events to be returned
+     * @return the ordinals of up to limit events in the range
+     */
+    public int[] query(int fromYear, int toYear, BitSet visible, int limit) {
+        return query(fromYear, toYear, visible, -90, -180, 90, 180, limit);
+    }
+
+    /**
+     * Finds the visible events in a range of years inside a box, earliest first
+     * A box whose west edge is east of its east edge crosses the 180th meridian
+     *
+     * @param fromYear the first year of the range
+     * @param toYear the last year of the range
+     * @param visible the ordinals of the events which appear on the map
+     * @param south the southern latitude of the box
+     * @param west the western longitude of the box
+     * @param north the northern latitude of the box
+     * @param east the eastern longitude of the box
+     * @param limit the most events to be returned
+     * @return the ordinals of up to limit events in the range and the box
+     */
+    public int[] query(int fromYear, int toYear, BitSet visible, double south, double west,
+                       double north, double east, int limit) {
+        int end = lowerBound((long) toYear + 1);
+        int[] found = new int[Math.max(0, Math.min(limit, 64))];
+        int numFound = 0;
+        for (int i = lowerBound(fromYear); i < end && numFound < limit; i++) {
+            int ordinal = ordinals[i];
+            if (visible.get(ordinal) && contains(south, west, north, east, ordinal)) {
+                if (numFound == found.length) {
+                    found = Arrays.copyOf(found, (int) Math.min(limit, found.length * 2L));
+                }
+                found[numFound++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(found, numFound);
+    }
+
+    /**
+     * Finds the parts of one range of years which are not in another, as when a time slider
+     * moves and only the events entering or leaving its range need to change
+     *
+     * @param fromYear the first year of the range
+     * @param toYear the last year of the range
+     * @param otherFromYear the first year of the range to be left out
+     * @param otherToYear the last year of the range to be left out
+     * @return the first and last year of up to two ranges, one after the other
+     */
+    public static int[] difference(int fromYear, int toYear, int otherFromYear,
+                                   int otherToYear) {
+        if (fromYear > toYear) {
+            return new int[0];
+        }
+        if (otherFromYear > otherToYear || toYear < otherFromYear || fromYear > otherToYear) {
+            return new int[] {fromYear, toYear};
+        }
+        int[] ranges = new int[4];
+        int n = 0;
+        if (fromYear < otherFromYear) {
+            ranges[n++] = fromYear;
+            ranges[n++] = otherFromYear - 1;
+        }
+        if (toYear > otherToYear) {
+            ranges[n++] = otherToYear + 1;
+            ranges[n++] = toYear;
+        }
+        return Arrays.copyOf(ranges, n);
+    }
+
+    /**
+     * @param year a year, which may be one past the last int
+     * @return the index of the first event in or after the year
+     */
+    private int lowerBound(long year) {
+        int low = 0;
+        int high = years.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (years[middle] < year) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private boolean contains(double south, double west, double north, double east, int ordinal) {
+        double latitude = eventStore.getLatitude(ordinal);
+        double longitude = eventStore.getLongitude(ordinal);
+        if (latitude < south || latitude > north) {
+            return false;
+        }
+        if (west <= east) {
+            return longitude >= west && longitude <= east;
+        }
+        return longitude >= west || longitude <= east;
+    }
+}
@@ -7,12 +7,13 @@ import android.os.Message;
 import com.weebly.explearn.familymap.model.DataCache;
 import com.weebly.explearn.familymap.net.ServerProxy;
 
-import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import results.EventsResult;
-import results.PeopleResult;
+import results.Result;
 import dbModels.*;
 
 /**
@@ -21,6 +22,8 @@ import dbModels.*;
 public class DataAsyncTask {
 
     private static final String DATA_RETRIEVAL_KEY = "DataRetrievalKey";
+    // fetches and parses the events while the task's own thread does the same for the people
+    private static final ExecutorService eventsExecutor = Executors.newCachedThreadPool();
 
     /**
      * Submits the current task to a new single thread executor to keep the main thread clear
@@ -38,6 +41,65 @@ public class DataAsyncTask {
         executor.submit(dataTask);
     }
 
+    /**
+     * Retrieves the people and events of the user's family tree and stores them together
+     * Both requests are sent at once, and each response is parsed on its own thread as it
+     * streams in, so the wait is for the slower of the two rather than both in turn
+     * Each person and event goes straight into the datacache's insertion as it is read,
+     * so the responses are never held in memory as a whole
+     *
+     * @param serverProxy the server proxy used to send the requests
+     * @param authtoken an authorization token used to verify the user's transaction
+     * @return null if the family tree was stored, otherwise the message of the first
+     * failed request (the people's before the events')
+     */
+    static String retrieveData(final ServerProxy serverProxy, final String authtoken) {
+        final DataCache.Insertion insertion = DataCache.getInstance().beginInsertion();
+        Future<Result> eventsFuture = eventsExecutor.submit(new Callable<Result>() {
+            @Override
+            public Result call() {
+                return serverProxy.getAllEvents(authtoken, new ServerProxy.Sink<Event>() {
+                    @Override
+                    public void accept(Event event) {
+                        insertion.addEvent(event);
+                    }
+                });
+            }
+        });
+
+        Result peopleResult;
+        Result eventsResult;
+        try {
+            peopleResult = serverProxy.getAllPeople(authtoken, new ServerProxy.Sink<Person>() {
+                @Override
+                public void accept(Person person) {
+                    insertion.addPerson(person);
+                }
+            });
+            eventsResult = eventsFuture.get();
+        }
+        catch (InterruptedException exception) {
+            eventsFuture.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(exception);
+        }
+        catch (ExecutionException exception) {
+            // anything the server proxy doesn't handle fails the task as it always has
+            throw new RuntimeException(exception.getCause());
+        }
+
+        if (!peopleResult.isSuccess()) {
+            return peopleResult.getMessage();
+        }
+        else if (!eventsResult.isSuccess()) {
+            return eventsResult.getMessage();
+        }
+        else {
+            insertion.commit();
+            return null;
+        }
+    }
+
     private static class DataTask implements Runnable {
 
         private final String hostName;
@@ -64,23 +126,7 @@ public class DataAsyncTask {
 
         @Override
         public void run() {
-            ServerProxy serverProxy = new ServerProxy(hostName, portNumber);
-            PeopleResult peopleResult = serverProxy.getAllPeople(authtoken);
-            EventsResult eventsResult = serverProxy.getAllEvents(authtoken);
-
-            if (!peopleResult.isSuccess()) {
-                sendMessage(peopleResult.getMessage());
-            }
-            else if (!eventsResult.isSuccess()) {
-                sendMessage(eventsResult.getMessage());
-            }
-            else {
-                ArrayList<Person> people = peopleResult.getData();
-                ArrayList<Event> events = eventsResult.getData();
-                DataCache.getInstance().insertPeople(people);
-                DataCache.getInstance().insertEvents(events);
-                sendMessage(null);
-            }
+            sendMessage(retrieveData(new ServerProxy(hostName, portNumber), authtoken));
         }
 
         /**
@@ -0,0 +1,309 @@
+package com.weebly.explearn.familymap.net;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import dbModels.*;
+import results.*;
+
+/**
+ * Hand-written json adapters for the people, events and results sent by the server,
+ * registered on the one gson instance shared by every request
+ * Each adapter reads and writes the same json as gson's reflection would (fields in
+ * declaration order, nulls left out, unknown fields skipped), without looking up
+ * fields reflectively or boxing numbers along the way
+ */
+public class JsonAdapters {
+
+    private static final PersonAdapter PERSON_ADAPTER = new PersonAdapter();
+    private static final EventAdapter EVENT_ADAPTER = new EventAdapter();
+
+    /**
+     * The gson instance shared by every request, which is safe to use from any thread
+     */
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Person.class, PERSON_ADAPTER)
+            .registerTypeAdapter(Event.class, EVENT_ADAPTER)
+            .registerTypeAdapter(PeopleResult.class, new PeopleResultAdapter())
+            .registerTypeAdapter(EventsResult.class, new EventsResultAdapter())
+            .create();
+
+    private JsonAdapters() {
+    }
+
+    private static class PersonAdapter extends TypeAdapter<Person> {
+
+        @Override
+        public void write(JsonWriter out, Person person) throws IOException {
+            if (person == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("personID").value(person.getPersonID());
+            out.name("associatedUsername").value(person.getAssociatedUsername());
+            out.name("firstName").value(person.getFirstName());
+            out.name("lastName").value(person.getLastName());
+            out.name("gender").value(person.getGender());
+            out.name("fatherID").value(person.getFatherID());
+            out.name("motherID").value(person.getMotherID());
+            out.name("spouseID").value(person.getSpouseID());
+            out.endObject();
+        }
+
+        @Override
+        public Person read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Person person = new Person(null, null, null, null, null, null, null, null);
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "personID":
+                        person.setPersonID(in.nextString());
+                        break;
+                    case "associatedUsername":
+                        person.setAssociatedUsername(in.nextString());
+                        break;
+                    case "firstName":
+                        person.setFirstName(in.nextString());
+                        break;
+                    case "lastName":
+                        person.setLastName(in.nextString());
+                        break;
+                    case "gender":
+                        person.setGender(in.nextString());
+                        break;
+                    case "fatherID":
+                        person.setFatherID(in.nextString());
+                        break;
+                    case "motherID":
+                        person.setMotherID(in.nextString());
+                        break;
+                    case "spouseID":
+                        person.setSpouseID(in.nextString());
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return person;
+        }
+    }
+
+    private static class EventAdapter extends TypeAdapter<Event> {
+
+        @Override
+        public void write(JsonWriter out, Event event) throws IOException {
+            if (event == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("eventID").value(event.getEventID());
+            out.name("associatedUsername").value(event.getAssociatedUsername());
+            out.name("personID").value(event.getPersonID());
+            out.name("latitude").value(event.getLatitude());
+            out.name("longitude").value(event.getLongitude());
+            out.name("country").value(event.getCountry());
+            out.name("city").value(event.getCity());
+            out.name("eventType").value(event.getEventType());
+            out.name("year").value(event.getYear());
+            out.endObject();
+        }
+
+        @Override
+        public Event read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Event event = new Event(null, null, null, 0, 0, null, null, null, 0);
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                try {
+                    switch (name) {
+                        case "eventID":
+                            event.setEventID(in.nextString());
+                            break;
+                        case "associatedUsername":
+                            event.setAssociatedUsername(in.nextString());
+                            break;
+                        case "personID":
+                            event.setPersonID(in.nextString());
+                            break;
+                        case "latitude":
+                            event.setLatitude(in.nextDouble());
+                            break;
+                        case "longitude":
+                            event.setLongitude(in.nextDouble());
+                            break;
+                        case "country":
+                            event.setCountry(in.nextString());
+                            break;
+                        case "city":
+                            event.setCity(in.nextString());
+                            break;
+                        case "eventType":
+                            event.setEventType(in.nextString());
+                            break;
+                        case "year":
+                            event.setYear(in.nextInt());
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                catch (NumberFormatException exception) {
+                    throw new JsonSyntaxException(exception);
+                }
+            }
+            in.endObject();
+            return event;
+        }
+    }
+
+    private static class PeopleResultAdapter extends TypeAdapter<PeopleResult> {
+
+        @Override
+        public void write(JsonWriter out, PeopleResult result) throws IOException {
+            if (result == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (result.getData() != null) {
+                out.name("data").beginArray();
+                for (Person person : result.getData()) {
+                    PERSON_ADAPTER.write(out, person);
+                }
+                out.endArray();
+            }
+            writeResult(out, result);
+            out.endObject();
+        }
+
+        @Override
+        public PeopleResult read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            PeopleResult result = new PeopleResult((String) null);
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("data") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    ArrayList<Person> people = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        people.add(PERSON_ADAPTER.read(in));
+                    }
+                    in.endArray();
+                    result.setData(people);
+                }
+                else {
+                    readResultField(in, name, result);
+                }
+            }
+            in.endObject();
+            return result;
+        }
+    }
+
+    private static class EventsResultAdapter extends TypeAdapter<EventsResult> {
+
+        @Override
+        public void write(JsonWriter out, EventsResult result) throws IOException {
+            if (result == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (result.getData() != null) {
+                out.name("data").beginArray();
+                for (Event event : result.getData()) {
+                    EVENT_ADAPTER.write(out, event);
+                }
+                out.endArray();
+            }
+            writeResult(out, result);
+            out.endObject();
+        }
+
+        @Override
+        public EventsResult read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            EventsResult result = new EventsResult((String) null);
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (name.equals("data") && in.peek() == JsonToken.BEGIN_ARRAY) {
+                    ArrayList<Event> events = new ArrayList<>();
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        events.add(EVENT_ADAPTER.read(in));
+                    }
+                    in.endArray();
+                    result.setData(events);
+                }
+                else {
+                    readResultField(in, name, result);
+                }
+            }
+            in.endObject();
+            return result;
+        }
+    }
+
+    /**
+     * Writes the fields every result shares, after those of the result's own class
+     */
+    private static void writeResult(JsonWriter out, Result result) throws IOException {
+        out.name("message").value(result.getMessage());
+        out.name("success").value(result.isSuccess());
+    }
+
+    /**
+     * Reads one of the fields every result shares, skipping any other field
+     */
+    private static void readResultField(JsonReader in, String name, Result result)
+            throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+        }
+        else if (name.equals("message")) {
+            result.setMessage(in.nextString());
+        }
+        else if (name.equals("success")) {
+            result.setSuccess(in.nextBoolean());
+        }
+        else {
+            in.skipValue();
+        }
+    }
+}
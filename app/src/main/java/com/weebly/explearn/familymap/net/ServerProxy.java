@@ -3,11 +3,16 @@ package com.weebly.explearn.familymap.net;
 import android.util.EventLog;
 import android.util.Log;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import java.io.*;
 import java.net.*;
+import java.util.zip.GZIPInputStream;
 
+import dbModels.*;
 import results.*;
 import requests.*;
 
@@ -16,6 +21,15 @@ import requests.*;
  */
 public class ServerProxy {
 
+    /**
+     * Receives the objects of a response one at a time, as they are read
+     */
+    public interface Sink<T> {
+        void accept(T item);
+    }
+
+    private static final String GZIP = "gzip";
+
     public static String hostName;
     public static String portNumber;
 
@@ -76,6 +90,9 @@ public class ServerProxy {
 
     /**
      * Handles the /person command
+     * Reads the whole response into one string before parsing it, so the app streams it
+     * through a sink instead; this is only kept for the tests, which check the streaming
+     * path against it
      *
      * @param authtoken an authorization token used to verify the user's transaction
      * @return an object containing the result data for the operation (all related person objects)
@@ -97,6 +114,9 @@ public class ServerProxy {
 
     /**
      * Handles the /event command
+     * Reads the whole response into one string before parsing it, so the app streams it
+     * through a sink instead; this is only kept for the tests, which check the streaming
+     * path against it
      *
      * @param authtoken an authorization token used to verify the user's transaction
      * @return an object containing the result data for the operation (all related event objects)
@@ -116,6 +136,32 @@ public class ServerProxy {
         }
     }
 
+    /**
+     * Handles the /person command, streaming each person to a sink as it is read
+     * The response is never held in memory as a whole, so only the people themselves
+     * take more memory as the family tree grows
+     *
+     * @param authtoken an authorization token used to verify the user's transaction
+     * @param sink receives each related person object
+     * @return an object containing the success and message of the operation
+     */
+    public Result getAllPeople(String authtoken, Sink<Person> sink) {
+        return processHttpStream(authtoken, "/person", Person.class, sink);
+    }
+
+    /**
+     * Handles the /event command, streaming each event to a sink as it is read
+     * The response is never held in memory as a whole, so only the events themselves
+     * take more memory as the family tree grows
+     *
+     * @param authtoken an authorization token used to verify the user's transaction
+     * @param sink receives each related event object
+     * @return an object containing the success and message of the operation
+     */
+    public Result getAllEvents(String authtoken, Sink<Event> sink) {
+        return processHttpStream(authtoken, "/event", Event.class, sink);
+    }
+
     /**
      * Handles the /clear command
      *
@@ -146,26 +192,8 @@ public class ServerProxy {
      */
     private String processHttp(String requestData, String httpCommand) {
         try {
-            URL url = new URL("http://" + hostName + ":" + portNumber + httpCommand);
-            HttpURLConnection http = (HttpURLConnection) url.openConnection();
-            http.addRequestProperty("Content-Type", "application/json");
-
-            if (httpCommand.equals("/person") || httpCommand.equals("/event")) {
-                http.setRequestMethod("GET");
-                http.setDoOutput(false);
-                http.addRequestProperty("Authorization", requestData);
-            }
-            else {
-                http.setRequestMethod("POST");
-                http.setDoOutput(true);
-                OutputStream requestBody = http.getOutputStream();
-                writeString(requestData, requestBody);
-                requestBody.close();
-            }
-
-            http.connect();
-
-            InputStream responseBody = http.getInputStream();
+            HttpURLConnection http = openHttp(requestData, httpCommand);
+            InputStream responseBody = openResponseBody(http);
             String responseData = readString(responseBody);
             return responseData;
         }
@@ -177,6 +205,142 @@ public class ServerProxy {
         }
     }
 
+    /**
+     * Opens an http connection to the server and processes the specified http request,
+     * reading the result data as it arrives rather than as one string
+     * The result's data array is passed to the sink one element at a time, and its other
+     * fields are read into the returned result
+     *
+     * @param requestData a string containing the request data for the operation
+     * @param httpCommand a string containing the http command to be executed
+     * @param itemType the type of the elements of the result's data array
+     * @param sink receives each element of the result's data array
+     * @return an object containing the success and message of the operation
+     */
+    private <T> Result processHttpStream(String requestData, String httpCommand,
+                                         Class<T> itemType, Sink<T> sink) {
+        HttpURLConnection http = null;
+        BufferedReader in;
+        try {
+            http = openHttp(requestData, httpCommand);
+            in = new BufferedReader(new InputStreamReader(openResponseBody(http), "UTF-8"));
+            in.mark(1);
+            if (in.read() != '{') {
+                // anything but a json object is the server's message
+                in.reset();
+                StringBuilder message = new StringBuilder();
+                char[] buf = new char[1024];
+                int len;
+                while ((len = in.read(buf)) > 0) {
+                    message.append(buf, 0, len);
+                }
+                in.close();
+                http.disconnect();
+                return new Result(false, message.toString());
+            }
+            in.reset();
+        }
+        catch (MalformedURLException exception) {
+            return new Result(false, "Invalid URL");
+        }
+        catch (IOException exception) {
+            if (http != null) {
+                http.disconnect();
+            }
+            return new Result(false, "Invalid input");
+        }
+
+        JsonReader reader = new JsonReader(in);
+        try {
+            TypeAdapter<T> adapter = JsonAdapters.GSON.getAdapter(itemType);
+            boolean success = false;
+            String message = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("data") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        sink.accept(adapter.read(reader));
+                    }
+                    reader.endArray();
+                }
+                else if (name.equals("message") && reader.peek() == JsonToken.STRING) {
+                    message = reader.nextString();
+                }
+                else if (name.equals("success") && reader.peek() == JsonToken.BOOLEAN) {
+                    success = reader.nextBoolean();
+                }
+                else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new Result(success, message);
+        }
+        catch (IOException | JsonParseException | IllegalStateException exception) {
+            return new Result(false, "Json error");
+        }
+        finally {
+            try {
+                reader.close();
+            }
+            catch (IOException exception) {
+                // the result has already been read
+            }
+            http.disconnect();
+        }
+    }
+
+    /**
+     * Opens an http connection to the server and sends the specified http request
+     *
+     * @param requestData a string containing the request data for the operation
+     * @param httpCommand a string containing the http command to be executed
+     * @return the connection, ready for its result data to be read
+     * @throws IOException if an input/output error occurs
+     */
+    private HttpURLConnection openHttp(String requestData, String httpCommand)
+            throws IOException {
+        URL url = new URL("http://" + hostName + ":" + portNumber + httpCommand);
+        HttpURLConnection http = (HttpURLConnection) url.openConnection();
+        http.addRequestProperty("Content-Type", "application/json");
+        // set by hand, so the response is left compressed for openResponseBody to stream
+        http.addRequestProperty("Accept-Encoding", GZIP);
+
+        if (httpCommand.equals("/person") || httpCommand.equals("/event")) {
+            http.setRequestMethod("GET");
+            http.setDoOutput(false);
+            http.addRequestProperty("Authorization", requestData);
+        }
+        else {
+            http.setRequestMethod("POST");
+            http.setDoOutput(true);
+            OutputStream requestBody = http.getOutputStream();
+            requestBody.write(requestData.getBytes("UTF-8"));
+            requestBody.close();
+        }
+
+        http.connect();
+        return http;
+    }
+
+    /**
+     * Opens the result data of a connection, decompressing it as it is read if the server
+     * compressed it
+     *
+     * @param http a connection whose request has been sent
+     * @return the result data, uncompressed
+     * @throws IOException if an input/output error occurs
+     */
+    private InputStream openResponseBody(HttpURLConnection http) throws IOException {
+        InputStream responseBody = http.getInputStream();
+        if (GZIP.equalsIgnoreCase(http.getContentEncoding())) {
+            return new GZIPInputStream(responseBody);
+        }
+        return responseBody;
+    }
+
     /**
      * Converts an Object to Json
      *
@@ -185,7 +349,7 @@ public class ServerProxy {
      * @throws IOException if an input/output error occurs
      */
     private static String serialize(Object object) throws IOException {
-        return (new Gson()).toJson(object);
+        return JsonAdapters.GSON.toJson(object);
     }
 
     /**
@@ -197,7 +361,7 @@ public class ServerProxy {
      * @throws IOException if an input/output error occurs
      */
     private static <T> T deserialize(String json, Class<T> returnType) throws IOException {
-        return (new Gson()).fromJson(json, returnType);
+        return JsonAdapters.GSON.fromJson(json, returnType);
     }
 
     /**
@@ -218,19 +382,6 @@ public class ServerProxy {
         return sb.toString();
     }
 
-    /**
-     * Writes a string to an OutputStream
-     *
-     * @param str the string to be written
-     * @param os the OutputStream to be written to
-     * @throws IOException if an input/output error occurs
-     */
-    private void writeString(String str, OutputStream os) throws IOException {
-        OutputStreamWriter sw = new OutputStreamWriter(os);
-        sw.write(str);
-        sw.flush();
-    }
-
     public static String getHostName() {
         return hostName;
     }
@@ -0,0 +1,133 @@
+package com.weebly.explearn.familymap.ui;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache which drops its least recently used values once they hold more bytes than its budget
+ * Each value's size is given when it is put, so the cache needs nothing from the platform and
+ * counts the lookups it could and couldn't answer
+ * Not thread safe, so its owner synchronizes access to it
+ * Subclasses can release whatever a value holds when it is dropped by overriding onDropped
+ *
+ * @param <V> the type of the cached values
+ */
+public class ByteLruCache<V> {
+
+    private final int budget; // most bytes of values kept at once
+    private final LinkedHashMap<String, Sized<V>> values; // values by key, least recent first
+    private int size = 0; // bytes of the values held
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param budget the most bytes of values to keep at once
+     */
+    public ByteLruCache(int budget) {
+        this.budget = budget;
+        values = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Retrieves a value, making it the most recently used
+     *
+     * @param key the key of the value
+     * @return the value, or null if it isn't cached
+     */
+    public V get(String key) {
+        Sized<V> sized = values.get(key);
+        if (sized == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return sized.value;
+    }
+
+    /**
+     * Caches a value, replacing any value with the same key and dropping the least recently
+     * used values until the cache fits its budget again
+     * A value larger than the whole budget is dropped at once
+     *
+     * @param key the key of the value
+     * @param value the value to be cached
+     * @param bytes the size of the value in bytes
+     */
+    public void put(String key, V value, int bytes) {
+        Sized<V> replaced = values.put(key, new Sized<>(value, bytes));
+        if (replaced != null) {
+            size -= replaced.bytes;
+        }
+        size += bytes;
+        Iterator<Map.Entry<String, Sized<V>>> eldest = values.entrySet().iterator();
+        while (size > budget && eldest.hasNext()) {
+            Map.Entry<String, Sized<V>> entry = eldest.next();
+            size -= entry.getValue().bytes;
+            eldest.remove();
+            onDropped(entry.getKey(), entry.getValue().value);
+        }
+    }
+
+    /**
+     * @return the bytes of values held by the cache
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of values held by the cache
+     */
+    public int count() {
+        return values.size();
+    }
+
+    /**
+     * @return the number of lookups which found their value
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups which didn't find their value
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Drops every cached value, keeping the counts of lookups
+     */
+    public void evictAll() {
+        for (Map.Entry<String, Sized<V>> entry : values.entrySet()) {
+            onDropped(entry.getKey(), entry.getValue().value);
+        }
+        values.clear();
+        size = 0;
+    }
+
+    /**
+     * Called for each value dropped to fit the budget or by evictAll,
+     * but not for a value replaced by another with the same key
+     *
+     * @param key the key of the value
+     * @param value the dropped value
+     */
+    protected void onDropped(String key, V value) {
+    }
+
+    /**
+     * A cached value along with its size
+     */
+    private static class Sized<V> {
+        private final V value;
+        private final int bytes;
+
+        private Sized(V value, int bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.weebly.explearn.familymap.ui;
+
+import android.os.Handler;
+import android.os.Message;
+
+import com.weebly.explearn.familymap.model.DataCache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An async task which clusters the events on the map for every zoom level
+ */
+public class ClusterAsyncTask {
+
+    // one background thread builds clusters so repeated requests never run side by side
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Submits the current task to the clustering thread to keep the main thread clear
+     *
+     * @param handler a uiThreadMessageHandler which executes elsewhere when async task completes
+     */
+    public static void Execute(Handler handler) {
+        executor.submit(new ClusterTask(handler));
+    }
+
+    private static class ClusterTask implements Runnable {
+
+        private final Handler messageHandler;
+
+        /**
+         * Creates a new async cluster task
+         *
+         * @param messageHandler propagates a message once the clusters are built
+         */
+        public ClusterTask(Handler messageHandler) {
+            this.messageHandler = messageHandler;
+        }
+
+        @Override
+        public void run() {
+            // builds the clusters of the current snapshot, or returns them if already built
+            DataCache.getInstance().getClusterPyramid();
+            messageHandler.sendMessage(Message.obtain());
+        }
+    }
+}
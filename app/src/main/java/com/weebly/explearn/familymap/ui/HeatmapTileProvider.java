@@ -0,0 +1,246 @@
+package com.weebly.explearn.familymap.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+import com.weebly.explearn.familymap.model.DataCache;
+import com.weebly.explearn.familymap.model.HeatmapRasterizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Serves the tiles of the event density heatmap to the tile overlay of every map
+ * The map asks for tiles on its own background threads, so each tile is drawn there from
+ * the events currently on the map. Drawn tiles are kept as PNGs in memory, dropping the
+ * least recently used once over budget, and on disk, so panning back or zooming out again
+ * doesn't draw them twice. The disk cache has its own budget, and once the events on the
+ * map change every tile drawn from the old events is dropped from both, so stale tiles are
+ * never served and never pile up
+ * There is one provider per process, since every map shares the one disk cache directory
+ */
+public class HeatmapTileProvider implements TileProvider {
+
+    private static final String CACHE_DIRECTORY = "heatmap";
+    private static final int MAX_BUDGET = 16 * 1024 * 1024; // most bytes of tiles ever kept
+    private static final int MEMORY_FRACTION = 16; // share of the app's memory given to tiles
+    private static final int ENTRY_OVERHEAD = 64; // bytes of bookkeeping for each cached tile
+    private static final int DISK_BUDGET = 32 * 1024 * 1024; // most bytes of tiles on disk
+    private static final int DISK_BLOCK = 4096; // fewest bytes a file takes on disk
+    private static final byte[] EMPTY = new byte[0]; // a tile with no events near it
+
+    private final HeatmapRasterizer rasterizer;
+    private final ByteLruCache<byte[]> tiles; // PNGs by filter version and tile
+    private final ByteLruCache<File> diskTiles; // files of the tiles on disk by the same keys
+    private volatile File directory; // where tiles are kept on disk, or null if unavailable
+    private boolean directoryOpened = false; // whether the directory has been looked for
+    private long version = -1; // the filter version every cached tile was drawn for
+
+    private static class InstanceHolder {
+        private static final HeatmapTileProvider instance = new HeatmapTileProvider();
+    }
+
+    /**
+     * @param context any context of the app, whose cache directory holds the tiles on disk
+     * @return the heatmap tile provider shared by every map
+     */
+    public static HeatmapTileProvider getInstance(Context context) {
+        HeatmapTileProvider provider = InstanceHolder.instance;
+        provider.openDirectory(context.getApplicationContext());
+        return provider;
+    }
+
+    private HeatmapTileProvider() {
+        rasterizer = new HeatmapRasterizer(HeatmapRasterizer.DEFAULT_RADIUS,
+                HeatmapRasterizer.DEFAULT_SCALE);
+        tiles = new ByteLruCache<>((int) Math.min(MAX_BUDGET,
+                Runtime.getRuntime().maxMemory() / MEMORY_FRACTION));
+        diskTiles = new ByteLruCache<File>(DISK_BUDGET) {
+            @Override
+            protected void onDropped(String key, File file) {
+                file.delete();
+            }
+        };
+    }
+
+    /**
+     * Finds the disk cache directory the first time the provider is used, emptying it,
+     * since tiles from a previous run may have been drawn from different events
+     *
+     * @param context the context whose cache directory holds the tiles on disk
+     */
+    private synchronized void openDirectory(Context context) {
+        if (directoryOpened) {
+            return;
+        }
+        directoryOpened = true;
+        File dir = new File(context.getCacheDir(), CACHE_DIRECTORY);
+        File[] stale = dir.listFiles();
+        if (stale != null) {
+            for (File file : stale) {
+                file.delete();
+            }
+        }
+        directory = dir.isDirectory() || dir.mkdirs() ? dir : null;
+    }
+
+    /**
+     * Retrieves a tile from memory, then from disk, and draws it only if neither has it
+     *
+     * @param x the column of the tile
+     * @param y the row of the tile
+     * @param zoom the zoom level of the tile
+     * @return the tile, or NO_TILE if no events on the map are near it
+     */
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        DataCache dc = DataCache.getInstance();
+        long filterVersion = dc.getFilterVersion();
+        String key = filterVersion + "_" + zoom + "_" + x + "_" + y;
+        byte[] png = getMemoryTile(key, filterVersion);
+        if (png == null) {
+            png = readTile(key);
+            if (png == null) {
+                png = drawTile(dc.renderHeatmapTile(rasterizer, zoom, x, y));
+                writeTile(key, png);
+            }
+            addMemoryTile(key, png);
+        }
+
+        if (png.length == 0) {
+            return NO_TILE;
+        }
+        return new Tile(HeatmapRasterizer.TILE_SIZE, HeatmapRasterizer.TILE_SIZE, png);
+    }
+
+    /**
+     * Drops every tile kept in memory, leaving those on disk
+     */
+    public synchronized void trimMemory() {
+        tiles.evictAll();
+    }
+
+    /**
+     * Looks a tile up in memory, first dropping every tile drawn for another filter version
+     * from memory and disk
+     *
+     * @param key the key of the tile
+     * @param filterVersion the current filter version
+     * @return the tile's PNG, or null if it isn't in memory
+     */
+    private synchronized byte[] getMemoryTile(String key, long filterVersion) {
+        if (filterVersion != version) {
+            version = filterVersion;
+            tiles.evictAll();
+            diskTiles.evictAll();
+        }
+        return tiles.get(key);
+    }
+
+    /**
+     * Keeps a drawn tile in memory, unless the events changed while it was drawn
+     *
+     * @param key the key of the tile
+     * @param png the tile's PNG
+     */
+    private synchronized void addMemoryTile(String key, byte[] png) {
+        if (isCurrent(key)) {
+            tiles.put(key, png, png.length + ENTRY_OVERHEAD);
+        }
+    }
+
+    /**
+     * Records a tile written to disk, deleting the least recently used tiles while the disk
+     * cache is over budget
+     *
+     * @param key the name of the tile's file
+     * @param file the tile's file
+     * @return whether the tile was drawn for the current filter version and kept
+     */
+    private synchronized boolean addDiskTile(String key, File file) {
+        if (!isCurrent(key)) {
+            return false;
+        }
+        diskTiles.put(key, file, (int) Math.max(DISK_BLOCK, file.length()));
+        return true;
+    }
+
+    private synchronized boolean isDiskTile(String key) {
+        // a lookup also marks the tile as recently used
+        return diskTiles.get(key) != null;
+    }
+
+    /**
+     * @return whether a tile was drawn for the current filter version, which changes when the
+     * events change while the tile is drawn
+     */
+    private boolean isCurrent(String key) {
+        return key.startsWith(version + "_");
+    }
+
+    private static byte[] drawTile(int[] pixels) {
+        if (pixels == null) {
+            return EMPTY;
+        }
+        Bitmap bitmap = Bitmap.createBitmap(pixels, HeatmapRasterizer.TILE_SIZE,
+                HeatmapRasterizer.TILE_SIZE, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    private byte[] readTile(String key) {
+        if (directory == null) {
+            return null;
+        }
+        File file = new File(directory, key);
+        if (!isDiskTile(key) || !file.isFile()) {
+            return null;
+        }
+        byte[] png = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int n = 0;
+            while (n < png.length) {
+                int read = in.read(png, n, png.length - n);
+                if (read < 0) {
+                    return null;
+                }
+                n += read;
+            }
+            return png;
+        }
+        catch (IOException exception) {
+            // an unreadable tile is drawn again instead
+            return null;
+        }
+    }
+
+    private void writeTile(String key, byte[] png) {
+        if (directory == null) {
+            return;
+        }
+        // written under another name first, so a reader never sees half a tile
+        File temp = new File(directory, key + "." + Thread.currentThread().getId());
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(png);
+        }
+        catch (IOException exception) {
+            // the tile is still cached in memory, just not on disk
+            temp.delete();
+            return;
+        }
+        File file = new File(directory, key);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+        else if (!addDiskTile(key, file)) {
+            file.delete();
+        }
+    }
+}
@@ -3,9 +3,13 @@ package com.weebly.explearn.familymap.ui;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
 
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
@@ -14,6 +18,8 @@ import androidx.fragment.app.FragmentManager;
 import android.view.*;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.ProgressBar;
+import android.widget.SeekBar;
 import android.widget.TextView;
 
 import com.google.android.gms.maps.*;
@@ -21,10 +27,19 @@ import com.google.android.gms.maps.model.*;
 import com.joanzapata.iconify.IconDrawable;
 import com.joanzapata.iconify.fonts.FontAwesomeIcons;
 import com.weebly.explearn.familymap.R;
+import com.weebly.explearn.familymap.model.ClusterPyramid;
 import com.weebly.explearn.familymap.model.DataCache;
+import com.weebly.explearn.familymap.model.LineSimplifier;
+import com.weebly.explearn.familymap.model.YearIndex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import dbModels.Event;
@@ -34,14 +49,55 @@ import dbModels.Person;
  * A fragment containing an interactive google map for the user's family tree
  * Can transfer to: login fragment, person activity, search activity, settings activity
  */
-public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleMap.OnMapLoadedCallback {
+public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleMap.OnMapLoadedCallback,
+        GoogleMap.OnCameraIdleListener {
+    private static final int MAX_MARKERS = 300; // the most markers on the map at once
+    private static final double BOUNDS_MARGIN = 0.5; // extra area around the screen given markers
+    private static final String CLUSTER_KEY = "cluster:"; // prefix of cluster marker keys
+    private static final int CLUSTER_ZOOM_STEP = 2; // zoom levels gained by tapping a cluster
+    private static final int MARKER_SIZE = 50; // the size of event markers in dp
+    private static final long FRAME_BUDGET_NANOS = 8000000; // time each marker batch may take
+    private static final int LINE_WIDTH = 13; // the width of lines from the selected event
+    private static final int LINE_WIDTH_STEP = 3; // width lost by each older generation's lines
+    private static final int LINE_GENERATIONS = (LINE_WIDTH + LINE_WIDTH_STEP - 1)
+            / LINE_WIDTH_STEP; // generations of lines wide enough to be seen
+    private static final int TIMELINE_RANGE = 10; // years shown at once when showing a range
+    private static final long PLAY_STEP_MILLIS = 100; // time between years while playing
+
     private GoogleMap map;
     public static String EVENT_ID;
     String bottomEventID;
     private LinearLayout bottomBar;
     private TextView bottomText;
     private ImageView bottomIcon;
-    private HashMap<Polyline, String> lines;
+    private ArrayList<Polyline> lines; // pooled lines, the first numLines of which are shown
+    private int numLines;
+    private String linesEventID; // the event whose lines are shown, or null if none are
+    private List<LineSpec> eventLines; // every line of the event whose lines are shown
+    private int linesZoom; // the zoom level the shown lines were simplified for
+    private String linesKey; // filter version and line filters the cached lines were made for
+    private HashMap<String, AncestorLines> ancestorLines; // lines above each person's first event
+    private HashMap<String, Integer> lineColors; // colors of lines by type
+    private HashMap<String, Marker> markers; // markers on the map by event ID or cluster key
+    private boolean clustering; // holds whether or not clusters are being built
+    private ProgressBar progressBar; // shows how many queued markers have been added
+    private final Handler loadHandler = new Handler(Looper.getMainLooper()); // runs marker batches
+    private int loadGeneration; // increases whenever the queued markers become stale
+    private HeatmapTileProvider heatmapProvider; // draws and caches the heatmap's tiles
+    private TileOverlay heatmapOverlay; // the heatmap on the map, or null if it is turned off
+    private long heatmapVersion; // the filter version the heatmap's tiles were drawn for
+    private MarkerLoader markerLoader; // adds the markers most recently queued
+    private double[] markerBounds; // south, west, north and east of the area given markers
+    private LinearLayout timelineBar;
+    private SeekBar timelineSeekBar;
+    private TextView timelineText;
+    private ImageView timelinePlay;
+    private boolean timeline; // holds whether or not only the slider's years are shown
+    private boolean timelineRange; // holds whether a range of years is shown or all up to one
+    private int timelineFrom; // the first year shown by the slider
+    private int timelineTo; // the last year shown by the slider
+    private boolean playing; // holds whether or not the slider is moving through the years
+    private final Handler playHandler = new Handler(Looper.getMainLooper()); // steps playback
 
     public MapFragment() {
         // Required empty public constructor
@@ -65,7 +121,12 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
         // Inflate the layout for this fragment
         View view = inflater.inflate(R.layout.fragment_map, container, false);
         bottomEventID = "";
-        lines = new HashMap<>();
+        lines = new ArrayList<>();
+        numLines = 0;
+        linesEventID = null;
+        ancestorLines = new HashMap<>();
+        lineColors = new HashMap<>();
+        markers = new HashMap<>();
 
         bottomBar = (LinearLayout) view.findViewById(R.id.mapBottomBar);
         bottomBar.setOnClickListener(new View.OnClickListener() {
@@ -77,8 +138,45 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
 
         bottomText = (TextView) view.findViewById(R.id.mapTextView);
         bottomIcon = (ImageView) view.findViewById(R.id.mapImageView);
+        progressBar = (ProgressBar) view.findViewById(R.id.mapProgressBar);
         setBottomIcon("");
 
+        timelineBar = (LinearLayout) view.findViewById(R.id.mapTimelineBar);
+        timelineSeekBar = (SeekBar) view.findViewById(R.id.mapTimelineSeekBar);
+        timelineSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                setTimelineYear(DataCache.getInstance().getFirstYear() + progress);
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                setPlaying(false);
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                // Required empty function call
+            }
+        });
+        timelineText = (TextView) view.findViewById(R.id.mapTimelineText);
+        timelineText.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                // switch between every year up to the slider and the decade before it
+                timelineRange = !timelineRange;
+                setTimelineYear(timelineTo);
+            }
+        });
+        timelinePlay = (ImageView) view.findViewById(R.id.mapTimelinePlay);
+        timelinePlay.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                setPlaying(!playing);
+            }
+        });
+        setPlaying(false);
+
         SupportMapFragment googleMapFragment = (SupportMapFragment) getChildFragmentManager().
                 findFragmentById(R.id.map);
         googleMapFragment.getMapAsync(this);
@@ -94,10 +192,16 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
         if (DataCache.getInstance().isLoggedIn()) {
             if (map != null) {
                 if (!dc.isUpdatedEvents()) { //update events
-                    map.clear();
-                    onMapReady(map);
+                    // only markers of events which were shown or hidden are changed
+                    removeLines();
+                    updateHeatmap();
+                    updateMarkers();
+                    bottomEventID = "";
                     bottomText.setText(R.string.map_fragment_message);
                     setBottomIcon("");
+                    if (getArguments().getString(EVENT_ID) != null) {
+                        setEventInfo(getArguments().getString(EVENT_ID));
+                    }
                 }
                 else if (!dc.isUpdatedLines()) { //update polylines
                     setEventInfo(bottomEventID);
@@ -133,6 +237,8 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
             super.onCreateOptionsMenu(menu, inflater);
             menu.findItem(R.id.menuSearch).setIcon(new IconDrawable(getActivity(),
                     FontAwesomeIcons.fa_search).colorRes(R.color.white).actionBarSize());
+            menu.findItem(R.id.menuTimeline).setIcon(new IconDrawable(getActivity(),
+                    FontAwesomeIcons.fa_clock_o).colorRes(R.color.white).actionBarSize());
             menu.findItem(R.id.menuSettings).setIcon(new IconDrawable(getActivity(),
                     FontAwesomeIcons.fa_gear).colorRes(R.color.white).actionBarSize());
         }
@@ -144,6 +250,10 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
             startActivity(new Intent(getActivity(), SearchActivity.class));
             return true;
         }
+        else if (item.getItemId() == R.id.menuTimeline) {
+            setTimeline(!timeline);
+            return true;
+        }
         else if (item.getItemId() == R.id.menuSettings) {
             startActivity(new Intent(getActivity(), SettingsActivity.class));
             return true;
@@ -155,6 +265,21 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
     public void onMapReady(GoogleMap googleMap) {
         map = googleMap;
         map.setOnMapLoadedCallback(this);
+        map.setOnCameraIdleListener(this);
+        map.setOnMarkerClickListener(new GoogleMap.OnMarkerClickListener() {
+            @Override
+            public boolean onMarkerClick(Marker marker) {
+                if (marker.getTag() instanceof ClusterPyramid.Cluster) {
+                    // expand the cluster by zooming in on it
+                    map.animateCamera(CameraUpdateFactory.newLatLngZoom(marker.getPosition(),
+                            map.getCameraPosition().zoom + CLUSTER_ZOOM_STEP));
+                    return true;
+                }
+                String eventID = ((Event) marker.getTag()).getEventID();
+                setEventInfo(eventID);
+                return false;
+            }
+        });
 
         Map<String, Event> events = DataCache.getInstance().getEvents();
 
@@ -166,27 +291,9 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
                     event.getLongitude()), zoomLevel));
         }
 
-        // Add markers for every event in the user's family tree
-        for (Event event : events.values()) {
-            String colorName = DataCache.getInstance().getCorrespondingColor(event.getEventType());
-            int color = getContext().getResources().getIdentifier(colorName, "color",
-                    getContext().getPackageName());
-            Drawable markerIcon = new IconDrawable(getActivity(), FontAwesomeIcons.fa_map_marker).
-                    colorRes(color).sizeDp(50);
-
-            Marker marker = map.addMarker(new MarkerOptions().position(
-                    new LatLng(event.getLatitude(), event.getLongitude())).
-                    icon(getBitmapFromDrawable(markerIcon)));
-            marker.setTag(event);
-            map.setOnMarkerClickListener(new GoogleMap.OnMarkerClickListener() {
-                @Override
-                public boolean onMarkerClick(Marker marker) {
-                    String eventID = ((Event) marker.getTag()).getEventID();
-                    setEventInfo(eventID);
-                    return false;
-                }
-            });
-        }
+        // Add markers for the events on screen, more are added as the camera moves
+        updateHeatmap();
+        updateMarkers();
 
         //get the event to display first if an event activity
         if (getArguments().getString(EVENT_ID) != null) {
@@ -199,9 +306,486 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
         // Required empty function call
     }
 
+    @Override
+    public void onCameraIdle() {
+        updateMarkers();
+        if (linesEventID != null && (int) map.getCameraPosition().zoom != linesZoom) {
+            // details of the lines which were too small to see may now be visible, or vice versa
+            linesZoom = (int) map.getCameraPosition().zoom;
+            showLines(simplifyLines(eventLines, linesZoom));
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        // markers still queued belong to a map which is going away
+        cancelMarkerLoading();
+        setPlaying(false);
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        // markers on the map keep their icons, so dropping the cache only costs redrawing
+        MarkerIconCache.getInstance().clear();
+        if (heatmapProvider != null) {
+            heatmapProvider.trimMemory();
+        }
+    }
+
+    /**
+     * Shows the heatmap overlay if the heatmap is turned on and hides it if not
+     * The heatmap shows every year, so it is hidden while the time slider is shown
+     * Tiles drawn before the events on the map changed are cleared so they are drawn again
+     */
+    private void updateHeatmap() {
+        DataCache dc = DataCache.getInstance();
+        if (dc.isHeatmap() && !timeline) {
+            if (heatmapOverlay == null) {
+                if (heatmapProvider == null) {
+                    heatmapProvider = HeatmapTileProvider.getInstance(getContext());
+                }
+                heatmapOverlay = map.addTileOverlay(new TileOverlayOptions().
+                        tileProvider(heatmapProvider));
+            }
+            else if (dc.getFilterVersion() != heatmapVersion) {
+                heatmapOverlay.clearTileCache();
+            }
+            heatmapVersion = dc.getFilterVersion();
+        }
+        else if (heatmapOverlay != null) {
+            heatmapOverlay.remove();
+            heatmapOverlay = null;
+        }
+    }
+
+    /**
+     * Adds markers for the events on screen (plus a margin) and removes markers which are not
+     * Events are grouped into clusters until the map is zoomed in close enough to show each one
+     * Only the grid cells around the screen are searched and the number of markers is capped
+     * New markers are added in batches over several frames, nearest the center first
+     */
+    private void updateMarkers() {
+        LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+        double south = bounds.southwest.latitude;
+        double north = bounds.northeast.latitude;
+        double west = bounds.southwest.longitude;
+        double east = bounds.northeast.longitude;
+
+        double latitudeMargin = (north - south) * BOUNDS_MARGIN;
+        south = Math.max(-90, south - latitudeMargin);
+        north = Math.min(90, north + latitudeMargin);
+        double longitudeSpan = west <= east ? east - west : east + 360 - west;
+        double longitudeMargin = longitudeSpan * BOUNDS_MARGIN;
+        if (longitudeSpan + 2 * longitudeMargin >= 360) {
+            west = -180;
+            east = 180;
+        }
+        else {
+            west = wrapLongitude(west - longitudeMargin);
+            east = wrapLongitude(east + longitudeMargin);
+        }
+
+        markerBounds = new double[] {south, west, north, east};
+
+        DataCache dc = DataCache.getInstance();
+        int zoom = (int) map.getCameraPosition().zoom;
+        // collect what belongs on the map, nearest the center of the screen first
+        // the heatmap shows the events instead, so only a pinned event gets a marker
+        ArrayList<Object> wanted = new ArrayList<>();
+        if (timeline) {
+            // only the events in the slider's years, each with its own marker
+            wanted.addAll(dc.getEventsInYears(timelineFrom, timelineTo, south, west, north, east,
+                    MAX_MARKERS));
+        }
+        else if (!dc.isHeatmap()) {
+            ClusterPyramid pyramid = null;
+            if (zoom <= ClusterPyramid.MAX_ZOOM) {
+                pyramid = dc.getBuiltClusterPyramid();
+                if (pyramid == null) {
+                    // show single markers until the clusters are ready
+                    buildClusters();
+                }
+            }
+            if (pyramid != null) {
+                for (ClusterPyramid.Cluster cluster
+                        : pyramid.query(zoom, south, west, north, east)) {
+                    wanted.add(cluster.getCount() == 1 ? cluster.getEvent() : cluster);
+                }
+            }
+            else {
+                wanted.addAll(dc.getEventsInBounds(south, west, north, east, MAX_MARKERS));
+            }
+        }
+        final LatLng center = map.getCameraPosition().target;
+        Collections.sort(wanted, new Comparator<Object>() {
+            @Override
+            public int compare(Object a, Object b) {
+                return Double.compare(getDistance(center, a), getDistance(center, b));
+            }
+        });
+        // an event activity's event always gets its own marker, ahead of everything else
+        String pinnedID = getArguments().getString(EVENT_ID);
+        if (pinnedID != null && dc.getEvents().get(pinnedID) != null) {
+            wanted.add(0, dc.getEvents().get(pinnedID));
+        }
+
+        HashSet<String> keys = new HashSet<>();
+        ArrayList<Object> pending = new ArrayList<>();
+        for (Object item : wanted) {
+            if (keys.size() == MAX_MARKERS) {
+                break;
+            }
+            String key = getMarkerKey(item);
+            if (!keys.add(key)) {
+                continue;
+            }
+            Marker shown = markers.get(key);
+            if (shown != null && item instanceof ClusterPyramid.Cluster
+                    && !isSameCluster(shown, (ClusterPyramid.Cluster) item)) {
+                // the filters changed which events are in this cluster
+                shown.remove();
+                markers.remove(key);
+                shown = null;
+            }
+            if (shown == null) {
+                pending.add(item);
+            }
+        }
+        Iterator<Map.Entry<String, Marker>> iterator = markers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Marker> entry = iterator.next();
+            if (!keys.contains(entry.getKey())) {
+                entry.getValue().remove();
+                iterator.remove();
+            }
+        }
+
+        // replaces whatever an earlier camera position still had queued
+        startMarkerLoading(pending);
+    }
+
+    /**
+     * Shows or hides the time slider, which limits the markers to the events of chosen years
+     *
+     * @param on whether or not the time slider should be shown
+     */
+    private void setTimeline(boolean on) {
+        setPlaying(false);
+        // the slider is set up before the timeline is on, so it doesn't move any markers yet
+        timeline = false;
+        if (on) {
+            DataCache dc = DataCache.getInstance();
+            timelineFrom = dc.getFirstYear();
+            timelineTo = dc.getLastYear();
+            timelineRange = false;
+            timelineSeekBar.setMax(timelineTo - timelineFrom);
+            timelineSeekBar.setProgress(timelineTo - timelineFrom);
+            showTimelineYears();
+        }
+        timeline = on;
+        timelineBar.setVisibility(on ? View.VISIBLE : View.GONE);
+        if (map != null) {
+            updateHeatmap();
+            updateMarkers();
+        }
+    }
+
+    /**
+     * Moves the time slider to a year, showing every year up to it or the range before it
+     *
+     * @param year the last year to be shown
+     */
+    private void setTimelineYear(int year) {
+        if (!timeline || map == null) {
+            return;
+        }
+        int fromYear = timelineRange ? year - TIMELINE_RANGE + 1
+                : DataCache.getInstance().getFirstYear();
+        moveTimeline(fromYear, year);
+        showTimelineYears();
+    }
+
+    /**
+     * Changes the years shown on the map, changing only the markers of the events entering
+     * or leaving them rather than filtering every event again
+     * Those events are found by binary search in the datacache's index of years
+     *
+     * @param fromYear the first year to be shown
+     * @param toYear the last year to be shown
+     */
+    private void moveTimeline(int fromYear, int toYear) {
+        DataCache dc = DataCache.getInstance();
+        String pinnedID = getArguments().getString(EVENT_ID);
+        int[] left = YearIndex.difference(timelineFrom, timelineTo, fromYear, toYear);
+        for (int i = 0; i < left.length; i += 2) {
+            for (Event event : dc.getEventsInYears(left[i], left[i + 1], markerBounds[0],
+                    markerBounds[1], markerBounds[2], markerBounds[3], Integer.MAX_VALUE)) {
+                Marker marker = markers.get(event.getEventID());
+                if (marker != null && !event.getEventID().equals(pinnedID)) {
+                    marker.remove();
+                    markers.remove(event.getEventID());
+                }
+            }
+        }
+
+        // markers still queued from earlier years are kept if their events are still shown
+        ArrayList<Object> pending = new ArrayList<>();
+        if (markerLoader != null) {
+            for (Object item : markerLoader.getRemaining()) {
+                if (item instanceof Event && ((Event) item).getYear() >= fromYear
+                        && ((Event) item).getYear() <= toYear) {
+                    pending.add(item);
+                }
+            }
+        }
+        int[] entered = YearIndex.difference(fromYear, toYear, timelineFrom, timelineTo);
+        for (int i = 0; i < entered.length; i += 2) {
+            int room = MAX_MARKERS - markers.size() - pending.size();
+            if (room <= 0) {
+                break;
+            }
+            for (Event event : dc.getEventsInYears(entered[i], entered[i + 1], markerBounds[0],
+                    markerBounds[1], markerBounds[2], markerBounds[3], room)) {
+                if (!markers.containsKey(event.getEventID())) {
+                    pending.add(event);
+                }
+            }
+        }
+        timelineFrom = fromYear;
+        timelineTo = toYear;
+        startMarkerLoading(pending);
+    }
+
+    private void showTimelineYears() {
+        timelineText.setText(timelineRange
+                ? getString(R.string.timeline_range, timelineFrom, timelineTo)
+                : getString(R.string.timeline_up_to, timelineTo));
+    }
+
+    /**
+     * Starts or stops moving the time slider through the years, a year at a time
+     *
+     * @param play whether or not the slider should be moving
+     */
+    private void setPlaying(boolean play) {
+        playing = play;
+        playHandler.removeCallbacksAndMessages(null);
+        if (play) {
+            if (timelineSeekBar.getProgress() == timelineSeekBar.getMax()) {
+                // start again from the beginning once the slider has reached the end
+                timelineSeekBar.setProgress(0);
+            }
+            playHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    if (timelineSeekBar.getProgress() < timelineSeekBar.getMax()) {
+                        timelineSeekBar.setProgress(timelineSeekBar.getProgress() + 1);
+                        playHandler.postDelayed(this, PLAY_STEP_MILLIS);
+                    }
+                    else {
+                        setPlaying(false);
+                    }
+                }
+            }, PLAY_STEP_MILLIS);
+        }
+        timelinePlay.setImageDrawable(new IconDrawable(getActivity(), play
+                ? FontAwesomeIcons.fa_pause : FontAwesomeIcons.fa_play).colorRes(R.color.gray).
+                sizeDp(24));
+    }
+
+    /**
+     * Adds queued markers in batches, in place of any still queued
+     *
+     * @param pending the events and clusters to be added, most important first
+     */
+    private void startMarkerLoading(List<Object> pending) {
+        cancelMarkerLoading();
+        markerLoader = new MarkerLoader(loadGeneration, pending);
+        markerLoader.run();
+    }
+
+    /**
+     * Stops adding the markers still queued, as when they are stale or the map is going away
+     */
+    private void cancelMarkerLoading() {
+        loadGeneration++;
+        markerLoader = null;
+        loadHandler.removeCallbacksAndMessages(null);
+        progressBar.setVisibility(View.GONE);
+    }
+
+    /**
+     * Adds queued markers a batch at a time, keeping each batch within a frame budget
+     * so the main thread can draw and respond to touches between batches
+     */
+    private class MarkerLoader implements Runnable {
+
+        private final int generation; // the load this belongs to, stale once it changes
+        private final List<Object> pending; // events and clusters still to be added, in order
+        private int numLoaded;
+
+        /**
+         * Creates a new marker loader
+         *
+         * @param generation the current load generation
+         * @param pending the events and clusters to be added, most important first
+         */
+        public MarkerLoader(int generation, List<Object> pending) {
+            this.generation = generation;
+            this.pending = pending;
+        }
+
+        @Override
+        public void run() {
+            if (generation != loadGeneration || map == null || !isAdded()) {
+                return;
+            }
+            long start = System.nanoTime();
+            while (numLoaded < pending.size()
+                    && System.nanoTime() - start < FRAME_BUDGET_NANOS) {
+                Object item = pending.get(numLoaded++);
+                if (item instanceof ClusterPyramid.Cluster) {
+                    addClusterMarker((ClusterPyramid.Cluster) item);
+                }
+                else {
+                    addMarker((Event) item);
+                }
+            }
+            showProgress(numLoaded, pending.size());
+            if (numLoaded < pending.size()) {
+                loadHandler.post(this);
+            }
+        }
+
+        /**
+         * @return the events and clusters which have not been added yet
+         */
+        public List<Object> getRemaining() {
+            return pending.subList(numLoaded, pending.size());
+        }
+    }
+
+    private void showProgress(int numLoaded, int numPending) {
+        if (numLoaded >= numPending) {
+            progressBar.setVisibility(View.GONE);
+        }
+        else {
+            progressBar.setMax(numPending);
+            progressBar.setProgress(numLoaded);
+            progressBar.setVisibility(View.VISIBLE);
+        }
+    }
+
+    private static String getMarkerKey(Object item) {
+        if (item instanceof ClusterPyramid.Cluster) {
+            return CLUSTER_KEY + ((ClusterPyramid.Cluster) item).getKey();
+        }
+        return ((Event) item).getEventID();
+    }
+
+    /**
+     * @param center the center of the screen
+     * @param item an event or cluster
+     * @return the squared distance in degrees from the center to the item
+     */
+    private static double getDistance(LatLng center, Object item) {
+        double latitude;
+        double longitude;
+        if (item instanceof ClusterPyramid.Cluster) {
+            latitude = ((ClusterPyramid.Cluster) item).getLatitude();
+            longitude = ((ClusterPyramid.Cluster) item).getLongitude();
+        }
+        else {
+            latitude = ((Event) item).getLatitude();
+            longitude = ((Event) item).getLongitude();
+        }
+        double latitudeDistance = latitude - center.latitude;
+        double longitudeDistance = Math.abs(longitude - center.longitude);
+        if (longitudeDistance > 180) {
+            longitudeDistance = 360 - longitudeDistance;
+        }
+        return latitudeDistance * latitudeDistance + longitudeDistance * longitudeDistance;
+    }
+
+    private void addMarker(Event event) {
+        String colorName = DataCache.getInstance().getCorrespondingColor(event.getEventType());
+        BitmapDescriptor markerIcon = MarkerIconCache.getInstance().getEventIcon(getContext(),
+                colorName, MARKER_SIZE);
+
+        Marker marker = map.addMarker(new MarkerOptions().position(
+                new LatLng(event.getLatitude(), event.getLongitude())).icon(markerIcon));
+        marker.setTag(event);
+        markers.put(event.getEventID(), marker);
+    }
+
+    private static boolean isSameCluster(Marker marker, ClusterPyramid.Cluster cluster) {
+        ClusterPyramid.Cluster shown = (ClusterPyramid.Cluster) marker.getTag();
+        return shown.getCount() == cluster.getCount()
+                && shown.getLatitude() == cluster.getLatitude()
+                && shown.getLongitude() == cluster.getLongitude();
+    }
+
+    /**
+     * Clusters the events on the map in the background, then updates the markers
+     */
+    private void buildClusters() {
+        if (clustering) {
+            return;
+        }
+        clustering = true;
+        Handler uiThreadMessageHandler = new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message message) {
+                clustering = false;
+                if (map != null && isAdded()) {
+                    updateMarkers();
+                }
+            }
+        };
+        ClusterAsyncTask.Execute(uiThreadMessageHandler);
+    }
+
+    private void addClusterMarker(ClusterPyramid.Cluster cluster) {
+        Marker marker = map.addMarker(new MarkerOptions().position(
+                new LatLng(cluster.getLatitude(), cluster.getLongitude())).
+                icon(getClusterIcon(cluster.getCount())).anchor(0.5f, 0.5f));
+        marker.setTag(cluster);
+        markers.put(CLUSTER_KEY + cluster.getKey(), marker);
+    }
+
+    /**
+     * Draws a circle labelled with the number of events in a cluster
+     *
+     * @param count the number of events in the cluster
+     * @return the icon of the cluster marker
+     */
+    private BitmapDescriptor getClusterIcon(int count) {
+        String label = count > 999 ? "999+" : String.valueOf(count);
+        float density = getResources().getDisplayMetrics().density;
+        int size = (int) ((label.length() < 3 ? 36 : 48) * density);
+
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(ContextCompat.getColor(getContext(), R.color.cluster_marker));
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f, paint);
+
+        paint.setColor(ContextCompat.getColor(getContext(), R.color.white));
+        paint.setTextSize(14 * density);
+        paint.setTextAlign(Paint.Align.CENTER);
+        float baseline = size / 2f - (paint.descent() + paint.ascent()) / 2;
+        canvas.drawText(label, size / 2f, baseline, paint);
+        return BitmapDescriptorFactory.fromBitmap(bitmap);
+    }
+
+    private static double wrapLongitude(double longitude) {
+        return ((longitude + 180) % 360 + 360) % 360 - 180;
+    }
+
     private void setEventInfo(String eventID) {
         bottomEventID = eventID;
-        int defaultWidth = 13;
         DataCache dc = DataCache.getInstance();
         Event event = dc.getEvents().get(eventID);
         Person person = dc.getPeople().get(event.getPersonID());
@@ -213,76 +797,218 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
                 dc.getEventDetails(eventID);
         bottomText.setText(text);
 
-        //remove old polylines
-        for (Polyline line : lines.keySet()) {
-            line.remove();
+        //draw polylines connecting important events, unless they are already shown
+        String key = dc.getFilterVersion() + " " + dc.getLineFilters();
+        if (!key.equals(linesKey)) {
+            // first events or the chosen lines changed, so the cached lines are stale
+            linesKey = key;
+            ancestorLines.clear();
+            linesEventID = null;
+        }
+        if (!eventID.equals(linesEventID)) {
+            eventLines = getLines(event, person);
+            linesZoom = (int) map.getCameraPosition().zoom;
+            showLines(simplifyLines(eventLines, linesZoom));
+            linesEventID = eventID;
         }
-        lines.clear();
+    }
 
-        //add new polylines connecting important events
+    /**
+     * Finds the lines connecting an event to the important events around it
+     *
+     * @param event the selected event
+     * @param person the person the event belongs to
+     * @return the lines to be shown
+     */
+    private List<LineSpec> getLines(Event event, Person person) {
+        DataCache dc = DataCache.getInstance();
         ArrayList<String> lineFilters = dc.getLineFilters();
+        ArrayList<LineSpec> specs = new ArrayList<>();
+
         if (lineFilters.contains(getString(R.string.life_story_line_filter))) {
-            ArrayList<Event> lifeEvents = dc.getLifeEvents(person.getPersonID());
-            for (int i = 0; i < lifeEvents.size(); i++) {
-                if (i < lifeEvents.size() - 1) {
-                    addLine(lifeEvents.get(i), lifeEvents.get(i + 1),
-                            getString(R.string.life_story_line_filter), defaultWidth);
-                }
+            List<Event> lifeEvents = dc.getLifeEvents(person.getPersonID());
+            for (int i = 0; i < lifeEvents.size() - 1; i++) {
+                specs.add(new LineSpec(getPosition(lifeEvents.get(i)),
+                        getPosition(lifeEvents.get(i + 1)),
+                        getString(R.string.life_story_line_filter), 0));
             }
         }
         if (lineFilters.contains(getString(R.string.family_tree_line_filter))) {
-            traverseAncestors(event, person.getPersonID(), defaultWidth);
+            addParentLines(specs, getPosition(event), person, LINE_GENERATIONS);
         }
         if (lineFilters.contains(getString(R.string.spouse_line_filter))
                 && person.getSpouseID() != null) {
-            if (!dc.getLifeEvents(person.getSpouseID()).isEmpty()) {
-                Event spouseEvent = dc.getLifeEvents(person.getSpouseID()).get(0);
-                addLine(event, spouseEvent, getString(R.string.spouse_line_filter), defaultWidth);
+            Event spouseEvent = dc.getAnchorEvent(person.getSpouseID());
+            if (spouseEvent != null) {
+                specs.add(new LineSpec(getPosition(event), getPosition(spouseEvent),
+                        getString(R.string.spouse_line_filter), 0));
             }
         }
+        return specs;
     }
 
-    private void addLine(Event currEvent, Event connEvent, String type, int width) {
-        LatLng currPos = new LatLng(currEvent.getLatitude(), currEvent.getLongitude());
-        LatLng connPos = new LatLng(connEvent.getLatitude(), connEvent.getLongitude());
-
-        String colorName = DataCache.getInstance().getCorrespondingColor(type);
-        int color = getContext().getResources().getIdentifier(colorName, "color",
-                getContext().getPackageName());
-
-        Polyline line = map.addPolyline(new PolylineOptions().add(currPos,
-                connPos).width(width).color(ContextCompat.getColor(getContext(), color)));
-        lines.put(line, type);
+    /**
+     * Adds the lines from a position to the first events of a person's parents,
+     * followed by the cached lines above each parent, up to a number of generations
+     * The person's lines are generation 0, their parents' lines generation 1, and so on
+     *
+     * @param specs the lines found so far
+     * @param from the position of the person's event
+     * @param person the person whose parents are connected
+     * @param depth the number of generations of lines to be added
+     */
+    private void addParentLines(List<LineSpec> specs, LatLng from, Person person, int depth) {
+        if (depth <= 0) {
+            // lines any further up the tree are too thin to be seen
+            return;
+        }
+        String[] parentIDs = {person.getMotherID(), person.getFatherID()};
+        for (String parentID : parentIDs) {
+            Event parentEvent = DataCache.getInstance().getAnchorEvent(parentID);
+            if (parentEvent != null) {
+                specs.add(new LineSpec(from, getPosition(parentEvent),
+                        getString(R.string.family_tree_line_filter), 0));
+                for (LineSpec spec : getAncestorLines(parentID, depth - 1)) {
+                    if (spec.generation < depth - 1) {
+                        specs.add(spec.olderBy(1));
+                    }
+                }
+            }
+        }
     }
 
-    private void traverseAncestors(Event currEvent, String currPersonID, int width) {
-        String type = getString(R.string.family_tree_line_filter);
+    /**
+     * Retrieves the lines above a person's first event, shared by every descendant's lines
+     * They are cached until the events on the map or the chosen lines change, and only
+     * found again when more generations are needed than were cached
+     *
+     * @param personID the ID of a person with at least one event on the map
+     * @param depth the number of generations of lines needed
+     * @return the lines from the person's first event up through at least depth generations
+     */
+    private List<LineSpec> getAncestorLines(String personID, int depth) {
+        AncestorLines cached = ancestorLines.get(personID);
+        if (cached != null && cached.depth >= depth) {
+            return cached.specs;
+        }
+        // a person who is their own ancestor in bad data stops the lines at the loop
+        ancestorLines.put(personID, new AncestorLines(depth, new ArrayList<LineSpec>()));
         DataCache dc = DataCache.getInstance();
-        Person currPerson = dc.getPeople().get(currPersonID);
+        List<LineSpec> specs = new ArrayList<>();
+        addParentLines(specs, getPosition(dc.getAnchorEvent(personID)),
+                dc.getPeople().get(personID), depth);
+        ancestorLines.put(personID, new AncestorLines(depth, specs));
+        return specs;
+    }
+
+    /**
+     * Simplifies lines for a zoom level, leaving out what would be too small to see
+     * Consecutive lines of the same kind (like a life story) are joined into one path,
+     * each path keeps only the points which change its shape by a pixel or more,
+     * and lines drawn over another line of the same kind are left out
+     *
+     * @param specs the lines to be simplified
+     * @param zoom the zoom level of the map
+     * @return the lines to be drawn
+     */
+    private static List<LineSpec> simplifyLines(List<LineSpec> specs, int zoom) {
+        LineSimplifier simplifier = new LineSimplifier(zoom, LineSimplifier.DEFAULT_TOLERANCE);
+        ArrayList<LineSpec> simplified = new ArrayList<>();
+        HashSet<String> drawn = new HashSet<>(); // the kind and ends of each straight line drawn
+        int start = 0;
+        while (start < specs.size()) {
+            LineSpec spec = specs.get(start);
+            ArrayList<LatLng> path = new ArrayList<>(spec.points);
+            int end = start + 1;
+            while (end < specs.size() && spec.isContinuedBy(specs.get(end))) {
+                spec = specs.get(end++);
+                path.add(spec.points.get(spec.points.size() - 1));
+            }
 
-        if (currPerson.getMotherID() != null) {
-            ArrayList<Event> motherEvents = dc.getLifeEvents(currPerson.getMotherID());
-            if (!motherEvents.isEmpty()) {
-                addLine(currEvent, motherEvents.get(0), type, width);
-                traverseAncestors(motherEvents.get(0), currPerson.getMotherID(), width - 3);
+            double[] latitudes = new double[path.size()];
+            double[] longitudes = new double[path.size()];
+            for (int i = 0; i < path.size(); i++) {
+                latitudes[i] = path.get(i).latitude;
+                longitudes[i] = path.get(i).longitude;
+            }
+            int[] kept = simplifier.simplify(latitudes, longitudes);
+            boolean overlaps = false;
+            if (kept.length == 2) {
+                long first = simplifier.getPixelKey(latitudes[0], longitudes[0]);
+                long last = simplifier.getPixelKey(latitudes[path.size() - 1],
+                        longitudes[path.size() - 1]);
+                overlaps = !drawn.add(spec.type + " " + spec.generation + " "
+                        + Math.min(first, last) + " " + Math.max(first, last));
+            }
+            if (kept.length > 0 && !overlaps) {
+                ArrayList<LatLng> points = new ArrayList<>(kept.length);
+                for (int index : kept) {
+                    points.add(path.get(index));
+                }
+                simplified.add(new LineSpec(points, spec.type, spec.generation));
             }
+            start = end;
         }
-        if (currPerson.getFatherID() != null) {
-            ArrayList<Event> fatherEvents = dc.getLifeEvents(currPerson.getFatherID());
-            if (!fatherEvents.isEmpty()) {
-                addLine(currEvent, fatherEvents.get(0), type, width);
-                traverseAncestors(fatherEvents.get(0), currPerson.getFatherID(), width - 3);
+        return simplified;
+    }
+
+    /**
+     * Shows lines on the map, updating the lines already drawn before adding any more
+     *
+     * @param specs the lines to be shown
+     */
+    private void showLines(List<LineSpec> specs) {
+        for (int i = 0; i < specs.size(); i++) {
+            LineSpec spec = specs.get(i);
+            int color = getLineColor(spec.type);
+            int width = lineWidth(spec.generation);
+            if (i < lines.size()) {
+                Polyline line = lines.get(i);
+                line.setPoints(spec.points);
+                line.setWidth(width);
+                line.setColor(color);
+                line.setVisible(true);
             }
+            else {
+                lines.add(map.addPolyline(new PolylineOptions().addAll(spec.points).
+                        width(width).color(color)));
+            }
+        }
+        for (int i = specs.size(); i < numLines; i++) {
+            lines.get(i).setVisible(false);
         }
+        numLines = specs.size();
     }
 
-    private BitmapDescriptor getBitmapFromDrawable(Drawable drawable) {
-        Canvas canvas = new Canvas();
-        Bitmap bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
-        canvas.setBitmap(bitmap);
-        drawable.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
-        drawable.draw(canvas);
-        return BitmapDescriptorFactory.fromBitmap(bitmap);
+    /**
+     * Hides every line, keeping them to be reused by the next selected event
+     */
+    private void removeLines() {
+        for (int i = 0; i < numLines; i++) {
+            lines.get(i).setVisible(false);
+        }
+        numLines = 0;
+        linesEventID = null;
+        eventLines = null;
+    }
+
+    private int getLineColor(String type) {
+        Integer color = lineColors.get(type);
+        if (color == null) {
+            String colorName = DataCache.getInstance().getCorrespondingColor(type);
+            color = ContextCompat.getColor(getContext(),
+                    MarkerIconCache.getInstance().getColorID(getContext(), colorName));
+            lineColors.put(type, color);
+        }
+        return color;
+    }
+
+    private static int lineWidth(int generation) {
+        return LINE_WIDTH - LINE_WIDTH_STEP * generation;
+    }
+
+    private static LatLng getPosition(Event event) {
+        return new LatLng(event.getLatitude(), event.getLongitude());
     }
 
     private void setBottomIcon(String gender) {
@@ -303,4 +1029,49 @@ public class MapFragment extends Fragment implements OnMapReadyCallback, GoogleM
         Drawable genderIcon = new IconDrawable(getActivity(), icon).colorRes(color).sizeDp(40);
         bottomIcon.setImageDrawable(genderIcon);
     }
-}
\ No newline at end of file
+
+    /**
+     * The lines above a person's first event, and how many generations of them were found
+     */
+    private static class AncestorLines {
+        private final int depth;
+        private final List<LineSpec> specs;
+
+        private AncestorLines(int depth, List<LineSpec> specs) {
+            this.depth = depth;
+            this.specs = specs;
+        }
+    }
+
+    /**
+     * A line through events, drawn thinner for each generation it is from the selected event
+     */
+    private static class LineSpec {
+        private final List<LatLng> points;
+        private final String type; // the line filter the line belongs to
+        private final int generation;
+
+        private LineSpec(LatLng from, LatLng to, String type, int generation) {
+            this(Arrays.asList(from, to), type, generation);
+        }
+
+        private LineSpec(List<LatLng> points, String type, int generation) {
+            this.points = points;
+            this.type = type;
+            this.generation = generation;
+        }
+
+        private LineSpec olderBy(int generations) {
+            return new LineSpec(points, type, generation + generations);
+        }
+
+        /**
+         * @param next a line which may start where this one ends
+         * @return whether the two lines can be drawn as one path
+         */
+        private boolean isContinuedBy(LineSpec next) {
+            return type.equals(next.type) && generation == next.generation
+                    && points.get(points.size() - 1).equals(next.points.get(0));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.weebly.explearn.familymap.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.joanzapata.iconify.IconDrawable;
+import com.joanzapata.iconify.fonts.FontAwesomeIcons;
+import com.weebly.explearn.familymap.R;
+
+import java.util.HashMap;
+
+/**
+ * A cache of the event marker icons shared by every marker on every map
+ * Each icon is drawn once per color and size, and the least recently used icons are
+ * dropped once the cache holds more bytes of bitmaps than its budget
+ */
+public class MarkerIconCache {
+
+    private static final int MAX_BUDGET = 8 * 1024 * 1024; // most bytes of icons ever kept
+    private static final int MEMORY_FRACTION = 32; // share of the app's memory given to icons
+
+    private final ByteLruCache<BitmapDescriptor> icons; // icons by color and size in pixels
+    private final HashMap<String, Integer> colorIDs; // color resource IDs by color name
+
+    private static class InstanceHolder {
+        private static final MarkerIconCache instance = new MarkerIconCache((int) Math.min(
+                MAX_BUDGET, Runtime.getRuntime().maxMemory() / MEMORY_FRACTION));
+    }
+
+    /**
+     * @return the marker icon cache shared by every map
+     */
+    public static MarkerIconCache getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    private MarkerIconCache(int budget) {
+        icons = new ByteLruCache<>(budget);
+        colorIDs = new HashMap<>();
+    }
+
+    /**
+     * Retrieves the marker icon of a color, drawing it only if it is not already cached
+     *
+     * @param context the context used to draw the icon
+     * @param colorName the name of the icon's color as found in colors.xml
+     * @param sizeDp the size of the icon in density-independent pixels
+     * @return the marker icon
+     */
+    public synchronized BitmapDescriptor getEventIcon(Context context, String colorName,
+                                                      int sizeDp) {
+        float density = context.getResources().getDisplayMetrics().density;
+        String key = colorName + "/" + Math.round(sizeDp * density);
+        BitmapDescriptor icon = icons.get(key);
+        if (icon != null) {
+            return icon;
+        }
+
+        Drawable drawable = new IconDrawable(context.getApplicationContext(),
+                FontAwesomeIcons.fa_map_marker).colorRes(getColorID(context, colorName)).
+                sizeDp(sizeDp);
+        Bitmap bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(),
+                drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+        drawable.draw(canvas);
+
+        icon = BitmapDescriptorFactory.fromBitmap(bitmap);
+        icons.put(key, icon, bitmap.getByteCount());
+        return icon;
+    }
+
+    /**
+     * Finds the resource ID of a color by name, looking each name up only once
+     * A name missing from colors.xml falls back to gray
+     *
+     * @param context the context holding the app's resources
+     * @param colorName the name of a color as found in colors.xml
+     * @return the resource ID of the color
+     */
+    public synchronized int getColorID(Context context, String colorName) {
+        Integer colorID = colorIDs.get(colorName);
+        if (colorID == null) {
+            colorID = context.getResources().getIdentifier(colorName, "color",
+                    context.getPackageName());
+            if (colorID == 0) {
+                colorID = R.color.gray;
+            }
+            colorIDs.put(colorName, colorID);
+        }
+        return colorID;
+    }
+
+    /**
+     * @return the number of icons found in the cache
+     */
+    public synchronized int getHits() {
+        return icons.getHits();
+    }
+
+    /**
+     * @return the number of icons which had to be drawn
+     */
+    public synchronized int getMisses() {
+        return icons.getMisses();
+    }
+
+    /**
+     * @return the bytes of bitmaps held by the cache
+     */
+    public synchronized int getSize() {
+        return icons.size();
+    }
+
+    /**
+     * Drops every cached icon, as when the system is low on memory
+     */
+    public synchronized void clear() {
+        icons.evictAll();
+    }
+}
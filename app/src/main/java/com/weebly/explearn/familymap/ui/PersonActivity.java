@@ -1,15 +1,23 @@
 package com.weebly.explearn.familymap.ui;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.BaseExpandableListAdapter;
+import android.widget.EditText;
 import android.widget.ExpandableListView;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -21,6 +29,8 @@ import com.weebly.explearn.familymap.model.DataCache;
 import org.w3c.dom.Text;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +44,11 @@ import dbModels.Person;
 public class PersonActivity extends AppCompatActivity {
 
     public static String PERSON_ID;
+    private static final String COMPARED_PERSON_ID = "comparedPersonID";
+    private static final int MAX_MATCHES = 50; // most people listed at once while picking
+
+    private Person person;
+    private String comparedPersonID; // the person the relationship is named for, or the user
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -42,7 +57,7 @@ public class PersonActivity extends AppCompatActivity {
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
         // retrieve correlated person and set textviews accordingly
-        Person person = DataCache.getInstance().getPeople().get(getIntent().
+        person = DataCache.getInstance().getPeople().get(getIntent().
                 getStringExtra(PERSON_ID));
         TextView firstName = findViewById(R.id.personFirstNameTextView);
         firstName.setText(person.getFirstName());
@@ -56,24 +71,151 @@ public class PersonActivity extends AppCompatActivity {
             gender.setText(R.string.male);
         }
 
+        // name how the person is related to the user, or to whoever was picked instead
+        if (savedInstanceState != null) {
+            comparedPersonID = savedInstanceState.getString(COMPARED_PERSON_ID);
+        }
+        setRelationship();
+        View.OnClickListener pickPerson = new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                pickComparedPerson();
+            }
+        };
+        findViewById(R.id.personRelationshipTextView).setOnClickListener(pickPerson);
+        findViewById(R.id.personRelationshipLabel).setOnClickListener(pickPerson);
+
         // get the necessary family and life event information
         ArrayList<Person> relevantPeople = DataCache.getInstance().
                 getFamily(person.getPersonID());
-        ArrayList<Event> relevantEvents = DataCache.getInstance().
+        List<Event> relevantEvents = DataCache.getInstance().
                 getLifeEvents(person.getPersonID());
         ExpandableListView expandableListView = findViewById(R.id.expandableListView);
         expandableListView.setAdapter(new ExpandableListAdapter(relevantPeople, relevantEvents));
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(COMPARED_PERSON_ID, comparedPersonID);
+    }
+
+    /**
+     * Names what the person is to the compared person, who is the user until another is picked
+     */
+    private void setRelationship() {
+        DataCache dc = DataCache.getInstance();
+        TextView relationship = findViewById(R.id.personRelationshipTextView);
+        TextView label = findViewById(R.id.personRelationshipLabel);
+        String fromPersonID = comparedPersonID;
+        if (fromPersonID == null) {
+            fromPersonID = dc.getUser() == null ? null : dc.getUser().getPersonID();
+            label.setText(R.string.relationship_to_user);
+        }
+        else {
+            label.setText(getString(R.string.relationship_to,
+                    dc.getPersonFullName(comparedPersonID)));
+        }
+
+        String relationshipName = fromPersonID == null ? null
+                : dc.getRelationship(fromPersonID, person.getPersonID());
+        if (relationshipName != null) {
+            relationship.setText(relationshipName);
+        }
+        else {
+            relationship.setText(R.string.not_related);
+        }
+    }
+
+    /**
+     * Lets the user pick anyone in the family tree to name the person's relationship to
+     * People are found by name through the search index as the user types, so only the first
+     * matches are named and sorted rather than everyone in the tree
+     */
+    private void pickComparedPerson() {
+        final DataCache dc = DataCache.getInstance();
+        final ArrayList<Person> matches = new ArrayList<>();
+        final ArrayAdapter<String> matchNames = new ArrayAdapter<>(this,
+                android.R.layout.simple_list_item_1);
+        EditText search = new EditText(this);
+        search.setHint(R.string.compare_with_hint);
+        ListView list = new ListView(this);
+        list.setAdapter(matchNames);
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.addView(search);
+        layout.addView(list);
+
+        final AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.compare_with)
+                .setView(layout)
+                .create();
+        search.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                // Required empty function call
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                ArrayList<Person> found = new ArrayList<>();
+                for (Person match : dc.getSearchedPeople(s.toString())) {
+                    if (found.size() == MAX_MATCHES) {
+                        break;
+                    }
+                    if (!match.getPersonID().equals(person.getPersonID())) {
+                        found.add(match);
+                    }
+                }
+                // each name is built once, then the matches are sorted by it
+                final String[] names = new String[found.size()];
+                Integer[] order = new Integer[found.size()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = dc.getPersonFullName(found.get(i).getPersonID());
+                    order[i] = i;
+                }
+                Arrays.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return names[a].compareToIgnoreCase(names[b]);
+                    }
+                });
+                matches.clear();
+                matchNames.clear();
+                for (int i : order) {
+                    matches.add(found.get(i));
+                    matchNames.add(names[i]);
+                }
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                // Required empty function call
+            }
+        });
+        list.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                String personID = matches.get(position).getPersonID();
+                boolean isUser = dc.getUser() != null
+                        && personID.equals(dc.getUser().getPersonID());
+                comparedPersonID = isUser ? null : personID;
+                setRelationship();
+                dialog.dismiss();
+            }
+        });
+        dialog.show();
+    }
+
     private class ExpandableListAdapter extends BaseExpandableListAdapter {
 
         private static final int PEOPLE_GROUP_POSITION = 1;
         private static final int EVENTS_GROUP_POSITION = 0;
 
         private final ArrayList<Person> people;
-        private final ArrayList<Event> events;
+        private final List<Event> events;
 
-        ExpandableListAdapter(ArrayList<Person> people, ArrayList<Event> events) {
+        ExpandableListAdapter(ArrayList<Person> people, List<Event> events) {
             this.people = people;
             this.events = events;
         }
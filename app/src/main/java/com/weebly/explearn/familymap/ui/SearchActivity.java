@@ -17,6 +17,8 @@ import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
+import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
 import android.widget.Filter;
 import android.widget.ImageView;
@@ -29,6 +31,7 @@ import com.weebly.explearn.familymap.R;
 import com.weebly.explearn.familymap.model.DataCache;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import dbModels.Event;
@@ -45,7 +48,7 @@ public class SearchActivity extends AppCompatActivity {
 
     RecyclerView recyclerView;
     FamilyTreeAdapter adapter;
-    private EditText searchBar;
+    private AutoCompleteTextView searchBar;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -70,8 +73,9 @@ public class SearchActivity extends AppCompatActivity {
             }
         };
 
-        searchBar = (EditText) findViewById(R.id.searchEditText);
+        searchBar = (AutoCompleteTextView) findViewById(R.id.searchEditText);
         searchBar.addTextChangedListener(textWatcher);
+        searchBar.setAdapter(new CompletionAdapter());
 
         ImageView searchIcon = (ImageView) findViewById(R.id.searchImageView);
         searchIcon.setImageDrawable(new IconDrawable(this, FontAwesomeIcons.fa_search).
@@ -138,6 +142,41 @@ public class SearchActivity extends AppCompatActivity {
         }
     }
 
+    private class CompletionAdapter extends ArrayAdapter<String> {
+
+        CompletionAdapter() {
+            super(SearchActivity.this, android.R.layout.simple_dropdown_item_1line,
+                    new ArrayList<>());
+        }
+
+        @NonNull
+        @Override
+        public Filter getFilter() {
+            return new Filter() {
+                @Override
+                protected FilterResults performFiltering(CharSequence constraint) {
+                    // the completion trie has already ranked names and places by prefix
+                    FilterResults results = new FilterResults();
+                    List<String> suggestions = constraint == null ? new ArrayList<>() :
+                            DataCache.getInstance().getCompletions(constraint.toString());
+                    results.values = suggestions;
+                    results.count = suggestions.size();
+                    return results;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                protected void publishResults(CharSequence constraint, FilterResults results) {
+                    clear();
+                    if (results.values != null) {
+                        addAll((List<String>) results.values);
+                    }
+                    notifyDataSetChanged();
+                }
+            };
+        }
+    }
+
     private class FamilyTreeViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         private final int viewType;
         private final ImageView icon;
@@ -106,6 +106,15 @@ public class SettingsActivity extends AppCompatActivity {
             }
         });
 
+        SwitchCompat heatmapSwitch = findViewById(R.id.heatmapSwitch);
+        heatmapSwitch.setChecked(dc.isHeatmap());
+        heatmapSwitch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                dc.setHeatmap(isChecked);
+            }
+        });
+
         LinearLayout logoutLinearLayout = findViewById(R.id.logoutLinearLayout);
         logoutLinearLayout.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -0,0 +1,132 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import dbModels.Event;
+
+public class ClusterPyramidTest extends TestCase {
+
+    private static final int NUM_EVENTS = 1000000;
+    private static final int NUM_QUERIES = 200;
+
+    private EventStore store;
+    private BitSet visible;
+
+    public void setUp() {
+        store = new EventStore(new StringDictionary());
+        visible = new BitSet();
+    }
+
+    @Test
+    public void testPassQuery() {
+        add(40.2, -111.6); // provo
+        add(40.7, -111.9); // salt lake city
+        add(41.9, 12.5); // rome
+        ClusterPyramid pyramid = new ClusterPyramid(store, visible);
+
+        // zoomed out, the two utah events share a cluster
+        List<ClusterPyramid.Cluster> clusters = pyramid.query(2, -90, -180, 90, 180);
+        assertEquals(2, clusters.size());
+        int total = 0;
+        for (ClusterPyramid.Cluster cluster : clusters) {
+            total += cluster.getCount();
+            if (cluster.getCount() == 2) {
+                assertEquals(40.45, cluster.getLatitude(), 0.1);
+                assertEquals(-111.75, cluster.getLongitude(), 0.01);
+            }
+        }
+        assertEquals(3, total);
+
+        // zoomed in, every event is on its own
+        assertEquals(3, pyramid.size(ClusterPyramid.MAX_ZOOM));
+        clusters = pyramid.query(ClusterPyramid.MAX_ZOOM, 40, -112, 41, -111);
+        assertEquals(2, clusters.size());
+        assertEquals(1, clusters.get(0).getCount());
+        assertEquals(2, pyramid.size(0));
+    }
+
+    @Test
+    public void testFailQuery() {
+        add(40.2, -111.6);
+        add(40.7, -111.9);
+        visible.clear(1);
+        ClusterPyramid pyramid = new ClusterPyramid(store, visible);
+
+        // hidden events are never clustered and empty areas have no clusters
+        List<ClusterPyramid.Cluster> clusters = pyramid.query(0, -90, -180, 90, 180);
+        assertEquals(1, clusters.size());
+        assertEquals(1, clusters.get(0).getCount());
+        assertEquals("e0", clusters.get(0).getEvent().getEventID());
+        assertEquals(0, pyramid.query(10, -10, -10, 10, 10).size());
+        assertEquals(0, new ClusterPyramid(store, new BitSet()).size(0));
+    }
+
+    @Test
+    public void testAbnormalQuery() {
+        add(-17.7, 178.0); // fiji
+        add(-14.3, -170.7); // american samoa
+        add(90.0, 0.0); // north pole
+        add(-90.0, 180.0); // south pole
+        ClusterPyramid pyramid = new ClusterPyramid(store, visible);
+
+        // a box crossing the 180th meridian
+        assertEquals(2, pyramid.query(8, -20, 170, -10, -165).size());
+        assertEquals(0, pyramid.query(8, -20, -165, -10, 170).size());
+        // the poles are clamped to the edge of the map
+        assertEquals(1, pyramid.query(8, 80, -1, 90, 1).size());
+        assertEquals(1, pyramid.query(8, -90, 179, -80, 180).size());
+        // zoom levels out of range are clamped
+        assertEquals(pyramid.size(0), pyramid.size(-3));
+        assertEquals(4, pyramid.query(40, -90, -180, 90, 180).size());
+    }
+
+    @Test
+    public void testBenchmarkQuery() {
+        Random random = new Random(240);
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            add(random.nextDouble() * 160 - 80, random.nextDouble() * 360 - 180);
+        }
+
+        ClusterPyramid pyramid = new ClusterPyramid(store, visible);
+
+        // each level merges squares of four cells of the level below, and keeps every event
+        int cells = ClusterPyramid.CELLS_PER_TILE;
+        assertEquals(NUM_EVENTS, pyramid.addCounts(0, 0, 0, cells, new float[cells * cells]));
+        for (int zoom = 0; zoom < ClusterPyramid.MAX_ZOOM; zoom++) {
+            assertTrue(pyramid.size(zoom) <= pyramid.size(zoom + 1));
+            assertTrue(pyramid.size(zoom + 1) <= 4 * pyramid.size(zoom));
+        }
+        assertTrue(pyramid.size(ClusterPyramid.MAX_ZOOM) <= NUM_EVENTS);
+
+        // a phone screen covers about four by six map tiles at any zoom
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            int zoom = random.nextInt(ClusterPyramid.MAX_ZOOM + 1);
+            double width = Math.min(350, 360.0 * 4 / (1 << zoom));
+            double height = Math.min(160, width * 1.5);
+            double south = random.nextDouble() * (160 - height) - 80;
+            double west = random.nextDouble() * 360 - 180;
+            double east = west + width > 180 ? west + width - 360 : west + width;
+
+            List<ClusterPyramid.Cluster> clusters = pyramid.query(zoom, south, west,
+                    south + height, east);
+            assertTrue(clusters.size() <= pyramid.size(zoom));
+            int numEvents = 0;
+            for (ClusterPyramid.Cluster cluster : clusters) {
+                numEvents += cluster.getCount();
+            }
+            assertTrue(numEvents <= NUM_EVENTS);
+        }
+    }
+
+    private void add(double latitude, double longitude) {
+        Event event = new Event("e" + store.size(), "dyl", "p", latitude, longitude,
+                "USA", "Provo", "Birth", 2000);
+        visible.set(store.add(event));
+    }
+}
@@ -0,0 +1,91 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CompletionTrieTest extends TestCase {
+
+    private CompletionTrie trie;
+
+    public void setUp() {
+        trie = new CompletionTrie();
+        trie.add("Dylan Webb", 4);
+        trie.add("Evelyn Webb", 6);
+        trie.add("Dallin Smith", 2);
+        trie.add("Salt Lake City", 9);
+        trie.add("Dublin", 1);
+        trie.rank();
+    }
+
+    @Test
+    public void testPassComplete() {
+        // heaviest first, whatever the case of the prefix
+        assertEquals(Arrays.asList("Dylan Webb", "Dallin Smith", "Dublin"), trie.complete("D"));
+        assertEquals(Arrays.asList("Dylan Webb"), trie.complete("dyl"));
+        // a prefix ending partway along a compressed edge still completes
+        assertEquals(Arrays.asList("Salt Lake City"), trie.complete("salt la"));
+    }
+
+    @Test
+    public void testPassCompleteLaterWord() {
+        // a surname finds everyone with it, and a place is found by any of its words
+        assertEquals(Arrays.asList("Evelyn Webb", "Dylan Webb"), trie.complete("webb"));
+        assertEquals(Arrays.asList("Dallin Smith"), trie.complete("sm"));
+        assertEquals(Arrays.asList("Salt Lake City"), trie.complete("lake"));
+        assertEquals(Arrays.asList("Salt Lake City"), trie.complete("city"));
+    }
+
+    @Test
+    public void testFailComplete() {
+        assertTrue(trie.complete("").isEmpty());
+        assertTrue(trie.complete("zz").isEmpty());
+        // a prefix which leaves an edge partway matches nothing
+        assertTrue(trie.complete("dyla w").isEmpty());
+        assertTrue(trie.complete("webbs").isEmpty());
+        // words are only matched from their start
+        assertTrue(trie.complete("ebb").isEmpty());
+    }
+
+    @Test
+    public void testAbnormalComplete() {
+        // the same term added twice is one suggestion with both weights
+        CompletionTrie twice = new CompletionTrie();
+        twice.add("Anna Annan", 1);
+        twice.add("anna annan", 1);
+        twice.add("Anders", 1);
+        twice.rank();
+        // a term reached through two of its words is only suggested once
+        List<String> suggestions = twice.complete("ann");
+        assertEquals(Arrays.asList("Anna Annan"), suggestions);
+        assertEquals(Arrays.asList("Anna Annan", "Anders"), twice.complete("an"));
+
+        // only the best few are suggested
+        CompletionTrie many = new CompletionTrie();
+        for (int i = 0; i < 20; i++) {
+            many.add("Name" + i, i);
+        }
+        many.rank();
+        assertEquals(CompletionTrie.MAX_SUGGESTIONS, many.complete("name").size());
+        assertEquals("Name19", many.complete("name").get(0));
+    }
+
+    @Test
+    public void testPassCompactness() {
+        // long keys sharing no characters past their first take one node each
+        CompletionTrie words = new CompletionTrie();
+        words.add("Abcdefghijklmnop", 1);
+        words.add("Zyxwvutsrqponmlk", 1);
+        words.rank();
+        assertEquals(3, words.size());
+
+        // each key which branches off another splits one edge and adds one leaf
+        words.add("Abcdefgh", 1);
+        words.add("Abcdefxyz", 1);
+        assertEquals(6, words.size());
+        assertTrue(words.size() < "abcdefghijklmnopzyxwvutsrqponmlk".length());
+    }
+}
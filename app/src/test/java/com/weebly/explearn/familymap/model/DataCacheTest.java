@@ -10,6 +10,11 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import dbModels.Event;
 import dbModels.Person;
@@ -79,7 +84,7 @@ public class DataCacheTest extends TestCase {
 
     @Test
     public void testPassGetLifeEvents() {
-        ArrayList<Event> lifeEvents = dc.getLifeEvents(testPerson1.getPersonID());
+        List<Event> lifeEvents = dc.getLifeEvents(testPerson1.getPersonID());
         assertEquals(testEvent3.getEventID(), lifeEvents.get(0).getEventID());
         assertEquals(testEvent1.getEventID(), lifeEvents.get(1).getEventID());
         assertEquals(testEvent5.getEventID(), lifeEvents.get(2).getEventID()); // 4 and 5 test
@@ -99,7 +104,7 @@ public class DataCacheTest extends TestCase {
 
     @Test
     public void testFailGetLifeEvents() {
-        ArrayList<Event> lifeEvents = dc.getLifeEvents(testPerson3.getPersonID());
+        List<Event> lifeEvents = dc.getLifeEvents(testPerson3.getPersonID());
         assertTrue(lifeEvents.isEmpty());
 
         lifeEvents = dc.getLifeEvents(null);
@@ -108,6 +113,110 @@ public class DataCacheTest extends TestCase {
         assertThrows(NullPointerException.class, ()-> dc.insertEvents(null));
     }
 
+    @Test
+    public void testPassLifeEventOrderIgnoresInsertion() {
+        ArrayList<Event> events = new ArrayList<>();
+        events.add(new Event("o1", "dyl", "05", 0.0, 0.0, "USA", "Provo", "death", 2000));
+        events.add(new Event("o2", "dyl", "05", 0.0, 0.0, "USA", "Provo", "Mission", 2000));
+        events.add(new Event("o3", "dyl", "05", 0.0, 0.0, "USA", "Provo", "graduation", 2000));
+        events.add(new Event("o4", "dyl", "05", 0.0, 0.0, "USA", "Provo", "Graduation", 2000));
+        ArrayList<Event> reversed = new ArrayList<>(events);
+        Collections.reverse(reversed);
+
+        dc.insertEvents(events);
+        List<Event> forwardOrder = new ArrayList<>(dc.getLifeEvents(testPerson5.getPersonID()));
+        dc.logout();
+        setUp();
+        dc.insertEvents(reversed);
+        List<Event> reverseOrder = dc.getLifeEvents(testPerson5.getPersonID());
+
+        assertEquals(forwardOrder, reverseOrder);
+        assertEquals("Birth", reverseOrder.get(0).getEventType());
+        assertEquals("Graduation", reverseOrder.get(1).getEventType());
+        assertEquals("graduation", reverseOrder.get(2).getEventType());
+        assertEquals("Mission", reverseOrder.get(3).getEventType());
+        assertEquals("death", reverseOrder.get(4).getEventType());
+        dc.logout();
+    }
+
+    @Test
+    public void testPassLifeEventsMemoized() {
+        List<Event> lifeEvents = dc.getLifeEvents(testPerson1.getPersonID());
+        assertSame(lifeEvents, dc.getLifeEvents(testPerson1.getPersonID()));
+        assertThrows(UnsupportedOperationException.class, ()-> lifeEvents.remove(0));
+
+        // switching off the father's side hides the user's father
+        dc.setUser(testPerson5);
+        long filterVersion = dc.getFilterVersion();
+        dc.changeEventFilters("father", false);
+        assertEquals(filterVersion + 1, dc.getFilterVersion());
+        assertTrue(dc.getLifeEvents(testPerson1.getPersonID()).isEmpty());
+
+        // only women are left on the map, so switching off men changes nothing
+        List<Event> motherEvents = dc.getLifeEvents(testPerson4.getPersonID());
+        dc.changeEventFilters("male", false);
+        assertEquals(filterVersion + 1, dc.getFilterVersion());
+        assertSame(motherEvents, dc.getLifeEvents(testPerson4.getPersonID()));
+
+        dc.changeEventFilters("male", true);
+        dc.changeEventFilters("father", true);
+        dc.logout();
+    }
+
+    @Test
+    public void testPassGetAnchorEvent() {
+        dc.setUser(testPerson5);
+        for (Person person : new Person[] {testPerson1, testPerson2, testPerson3, testPerson4,
+                testPerson5}) {
+            List<Event> lifeEvents = dc.getLifeEvents(person.getPersonID());
+            assertSame(lifeEvents.isEmpty() ? null : lifeEvents.get(0),
+                    dc.getAnchorEvent(person.getPersonID()));
+        }
+        assertNull(dc.getAnchorEvent("unknown"));
+        assertNull(dc.getAnchorEvent(null));
+
+        // the father's first event leaves the map along with the rest of his events
+        assertNotNull(dc.getAnchorEvent(testPerson1.getPersonID()));
+        dc.changeEventFilters("father", false);
+        assertNull(dc.getAnchorEvent(testPerson1.getPersonID()));
+        dc.changeEventFilters("father", true);
+        dc.logout();
+    }
+
+    @Test
+    public void testPassClustersReusedAfterToggle() {
+        dc.setUser(testPerson5);
+        assertNull(dc.getBuiltClusterPyramid());
+        ClusterPyramid pyramid = dc.getClusterPyramid();
+        assertSame(pyramid, dc.getBuiltClusterPyramid());
+
+        // switching the father's side off and on again shows the same events as before
+        dc.changeEventFilters("father", false);
+        assertNull(dc.getBuiltClusterPyramid());
+        assertNotSame(pyramid, dc.getClusterPyramid());
+        dc.changeEventFilters("father", true);
+        assertSame(pyramid, dc.getBuiltClusterPyramid());
+        dc.logout();
+    }
+
+    @Test
+    public void testPassGetEventsInYears() {
+        dc.setUser(testPerson5);
+        assertEquals(2019, dc.getFirstYear());
+        assertEquals(2024, dc.getLastYear());
+        assertEquals(4, dc.getEventsInYears(2020, 2021, 10).size());
+        assertEquals(testEvent6, dc.getEventsInYears(2022, 2030, 10).get(0));
+        assertEquals(2, dc.getEventsInYears(0, 2030, 2).size());
+        // only London and Rome are south of the equator
+        assertEquals(2, dc.getEventsInYears(2020, 2021, -90, -180, 0, 180, 10).size());
+
+        // filtered events are left out of every year
+        dc.changeEventFilters("father", false);
+        assertEquals(1, dc.getEventsInYears(2020, 2021, 10).size());
+        dc.changeEventFilters("father", true);
+        dc.logout();
+    }
+
     @Test
     public void testPassGetFamily() {
         ArrayList<Person> family = dc.getFamily(testPerson1.getPersonID());
@@ -137,6 +246,51 @@ public class DataCacheTest extends TestCase {
         assertThrows(NullPointerException.class, ()-> dc.insertPeople(null));
     }
 
+    @Test
+    public void testPassGetChildren() {
+        ArrayList<Person> children = dc.getChildren(testPerson1.getPersonID());
+        assertEquals(1, children.size());
+        assertEquals(testPerson5.getPersonID(), children.get(0).getPersonID());
+
+        children = dc.getChildren(testPerson4.getPersonID());
+        assertEquals(1, children.size());
+        assertEquals(testPerson5.getPersonID(), children.get(0).getPersonID());
+
+        assertTrue(dc.getChildren(testPerson5.getPersonID()).isEmpty());
+        assertTrue(dc.getChildren(null).isEmpty());
+    }
+
+    @Test
+    public void testBenchmarkGetFamily() {
+        // builds a 100k person tree where person i has parents 2i + 1 and 2i + 2
+        final int numPeople = 100000;
+        ArrayList<Person> people = new ArrayList<>();
+        for (int i = 0; i < numPeople; i++) {
+            String fatherID = 2 * i + 1 < numPeople ? "p" + (2 * i + 1) : null;
+            String motherID = 2 * i + 2 < numPeople ? "p" + (2 * i + 2) : null;
+            String gender = i % 2 == 0 ? "f" : "m";
+            people.add(new Person("p" + i, "bench", "First" + i, "Last",
+                    gender, fatherID, motherID, null));
+        }
+        dc.insertPeople(people);
+
+        // the children index is built once for the whole tree, so each lookup only reads
+        // the person's own parents and children, and every person is a child exactly once
+        int numChildren = 0;
+        for (int i = 0; i < numPeople; i++) {
+            ArrayList<Person> family = dc.getFamily("p" + i);
+            int numParents = Math.min(2, Math.max(0, numPeople - 1 - 2 * i));
+            List<Person> children = family.subList(numParents, family.size());
+            if (i > 0) {
+                assertEquals(1, children.size());
+                assertEquals("p" + ((i - 1) / 2), children.get(0).getPersonID());
+            }
+            numChildren += children.size();
+        }
+        assertEquals(numPeople - 1, numChildren);
+        dc.logout();
+    }
+
     @Test
     public void testPassGetSearchedPeople() {
         ArrayList<Person> people = dc.getSearchedPeople("d");
@@ -199,6 +353,27 @@ public class DataCacheTest extends TestCase {
         assertThrows(NullPointerException.class, ()-> dc.getSearchedEvents(null));
     }
 
+    @Test
+    public void testPassGetCompletions() {
+        // Dylan has the most events so he comes before the other Webbs
+        assertEquals("Dylan Webb", dc.getCompletions("d").get(0));
+        assertEquals("Dylan Webb", dc.getCompletions("DYL").get(0));
+
+        // USA has four events, SLC only two
+        assertEquals("USA", dc.getCompletions("u").get(0));
+        assertEquals("SLC", dc.getCompletions("sl").get(0));
+        assertTrue(dc.getCompletions("e").contains("England"));
+        assertTrue(dc.getCompletions("e").contains("Egypt"));
+        assertTrue(dc.getCompletions("e").contains("Evelyn Webb"));
+    }
+
+    @Test
+    public void testFailGetCompletions() {
+        assertTrue(dc.getCompletions("").isEmpty());
+        assertTrue(dc.getCompletions("zz").isEmpty());
+        assertThrows(NullPointerException.class, ()-> dc.getCompletions(null));
+    }
+
     @Test
     public void testPassGetEventFilters() {
         dc.setUser(testPerson5);
@@ -241,4 +416,150 @@ public class DataCacheTest extends TestCase {
         dc.changeEventFilters("father", true);
         dc.changeEventFilters("mother", true);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAbnormalAncestorCycle() {
+        // bad data where two people are each other's father
+        Person cycle1 = new Person("c1", "dyl", "Loop", "One",
+                "m", "c2", null, null);
+        Person cycle2 = new Person("c2", "dyl", "Loop", "Two",
+                "m", "c1", null, null);
+        ArrayList<Person> people = new ArrayList<>();
+        people.add(cycle1);
+        people.add(cycle2);
+        dc.insertPeople(people);
+        ArrayList<Event> events = new ArrayList<>();
+        events.add(new Event("c3", "dyl", "c2",
+                0.0, 0.0, "USA", "Provo", "Birth", 1990));
+        dc.insertEvents(events);
+
+        dc.setUser(cycle1);
+        dc.changeEventFilters("mother", false);
+        assertNotNull(dc.getEvents().get("c3"));
+        dc.changeEventFilters("father", false);
+        assertNull(dc.getEvents().get("c3"));
+
+        dc.logout();
+    }
+
+    @Test
+    public void testPassGetCorrespondingColor() {
+        String birthColor = dc.getCorrespondingColor("Birth");
+        assertEquals(birthColor, dc.getCorrespondingColor("birth"));
+        assertEquals(birthColor, dc.getCorrespondingColor("BIRTH"));
+        assertFalse(birthColor.equals(dc.getCorrespondingColor("Death")));
+        assertFalse(dc.getCorrespondingColor("spouse").equals(
+                dc.getCorrespondingColor("life_story")));
+
+        // a published dictionary is never added to, and colors outlast new events
+        StringDictionary dictionary = dc.getDictionary();
+        int size = dictionary.size();
+        ArrayList<Event> events = new ArrayList<>();
+        events.add(new Event("k1", "dyl", "05", 0.0, 0.0, "Peru", "Lima", "Knighthood", 2001));
+        dc.insertEvents(events);
+        assertEquals(size, dictionary.size());
+        assertEquals(StringDictionary.NONE, dictionary.getCode("Knighthood"));
+        assertEquals(birthColor, dc.getCorrespondingColor("Birth"));
+
+        // a type outside the family tree isn't added, but always gets the same color
+        String coronationColor = dc.getCorrespondingColor("Coronation");
+        assertEquals(coronationColor, dc.getCorrespondingColor("coronation"));
+        assertEquals(StringDictionary.NONE, dc.getDictionary().getCode("Coronation"));
+        dc.logout();
+    }
+
+    @Test
+    public void testStressReadsDuringLoad() throws InterruptedException {
+        final int numBatches = 300;
+        final int numReaders = 4;
+        final AtomicBoolean loading = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < numBatches; i++) {
+                        ArrayList<Person> people = new ArrayList<>();
+                        people.add(new Person("s" + i, "dyl", "Stress" + i, "Load",
+                                i % 2 == 0 ? "m" : "f", null, null, null));
+                        dc.insertPeople(people);
+                        // a person's events always arrive together
+                        ArrayList<Event> events = new ArrayList<>();
+                        events.add(new Event("s" + i + "b", "dyl", "s" + i,
+                                1.0, 2.0, "USA", "Provo", "Birth", 1900 + i));
+                        events.add(new Event("s" + i + "m", "dyl", "s" + i,
+                                1.0, 2.0, "USA", "Orem", "Marriage", 1920 + i));
+                        events.add(new Event("s" + i + "d", "dyl", "s" + i,
+                                1.0, 2.0, "Italy", "Rome", "Death", 1950 + i));
+                        dc.insertEvents(events);
+                    }
+                }
+                catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                finally {
+                    loading.set(false);
+                }
+            }
+        });
+
+        ArrayList<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < numReaders; r++) {
+            final int seed = r;
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(seed);
+                        while (loading.get()) {
+                            long version = dc.getVersion();
+                            // each map comes from one snapshot, so it never holds part of a
+                            // batch, and people are inserted before their events
+                            int numEvents = 0;
+                            for (Event event : dc.getEvents().values()) {
+                                assertNotNull(event.getEventID());
+                                if (event.getPersonID().startsWith("s")) {
+                                    numEvents++;
+                                }
+                            }
+                            assertEquals(0, numEvents % 3);
+                            int numPeople = 0;
+                            for (Person person : dc.getPeople().values()) {
+                                if (person.getPersonID().startsWith("s")) {
+                                    numPeople++;
+                                }
+                            }
+                            assertTrue(numPeople + " people, " + numEvents + " events",
+                                    numPeople >= numEvents / 3);
+                            int numLifeEvents = dc.getLifeEvents(
+                                    "s" + random.nextInt(numBatches)).size();
+                            assertTrue(numLifeEvents == 0 || numLifeEvents == 3);
+                            dc.getSearchedEvents("rom");
+                            dc.getSearchedPeople("stress");
+                            dc.getCompletions("st");
+                            assertTrue(dc.getVersion() >= version);
+                        }
+                    }
+                    catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(String.valueOf(failure.get()), failure.get());
+        assertEquals(3, dc.getLifeEvents("s" + (numBatches - 1)).size());
+        assertEquals(numBatches, dc.getSearchedPeople("stress").size());
+        dc.logout();
+    }
+}
@@ -0,0 +1,99 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import dbModels.Event;
+
+public class EventStoreTest extends TestCase {
+
+    private static final int NUM_EVENTS = 1000000;
+
+    private final String[] types = {"Birth", "Marriage", "Death", "Baptism", "Graduation"};
+    private final String[] cities = {"Provo", "SLC", "Rome", "London", "Cairo", "Lima"};
+    private final String[] countries = {"USA", "Italy", "England", "Egypt", "Peru"};
+
+    @Test
+    public void testPassAddAndRead() {
+        EventStore store = new EventStore(new StringDictionary());
+        Event event = new Event("01", "dyl", "01",
+                24.0, 8.9, "USA", "Provo", "Birth", 2019);
+        int ordinal = store.add(event);
+
+        assertEquals(0, ordinal);
+        assertEquals(1, store.size());
+        assertEquals(ordinal, store.getOrdinal("01"));
+        assertEquals(24.0, store.getLatitude(ordinal));
+        assertEquals(8.9, store.getLongitude(ordinal));
+        assertEquals(2019, store.getYear(ordinal));
+        assertSame(event, store.getEvent(ordinal));
+
+        // re-adding an event with the same ID replaces it in place
+        Event newEvent = new Event("01", "dyl", "01",
+                -30.2, 6.6, "Italy", "Rome", "Burial", 2021);
+        assertEquals(ordinal, store.add(newEvent));
+        assertEquals(1, store.size());
+        assertEquals(2021, store.getYear(ordinal));
+    }
+
+    @Test
+    public void testFailGetOrdinal() {
+        EventStore store = new EventStore(new StringDictionary());
+        assertEquals(-1, store.getOrdinal("missing"));
+        assertEquals(-1, store.getOrdinal(null));
+    }
+
+    @Test
+    public void testBenchmarkColumnsVersusObjects() {
+        StringDictionary dictionary = new StringDictionary();
+        EventStore store = new EventStore(dictionary);
+        Map<String, Event> eventMap = new HashMap<>();
+        ArrayList<Event> eventList = new ArrayList<>();
+        Random random = new Random(240);
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            Event event = new Event("e" + i, "dyl", "p" + (i / 3),
+                    random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+                    countries[i % countries.length], cities[i % cities.length],
+                    types[i % types.length], 1800 + random.nextInt(220));
+            eventMap.put(event.getEventID(), event);
+            eventList.add(event);
+            store.add(event);
+        }
+        int[] reads = new int[NUM_EVENTS];
+        for (int i = 0; i < reads.length; i++) {
+            reads[i] = random.nextInt(NUM_EVENTS);
+        }
+
+        // full scan of the coordinates of every event
+        double mapSum = 0;
+        for (Event event : eventMap.values()) {
+            mapSum += event.getLatitude() + event.getLongitude();
+        }
+        double storeSum = 0;
+        for (int i = 0; i < store.size(); i++) {
+            storeSum += store.getLatitude(i) + store.getLongitude(i);
+        }
+        assertEquals(mapSum, storeSum, 1e-3);
+
+        // random reads of single fields
+        long objectYears = 0;
+        long columnYears = 0;
+        for (int ordinal : reads) {
+            Event event = eventList.get(ordinal);
+            objectYears += event.getYear();
+            columnYears += store.getYear(ordinal);
+            assertEquals(dictionary.getCode(event.getEventType()), store.getTypeCode(ordinal));
+            assertEquals(dictionary.getCode(event.getCity()), store.getCityCode(ordinal));
+        }
+        assertEquals(objectYears, columnYears);
+
+        // every type and place is stored once along with its lowercase form
+        assertEquals(2 * (types.length + cities.length + countries.length), dictionary.size());
+    }
+}
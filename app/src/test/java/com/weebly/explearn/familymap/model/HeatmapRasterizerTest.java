@@ -0,0 +1,128 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import dbModels.Event;
+
+public class HeatmapRasterizerTest extends TestCase {
+
+    private static final int NUM_EVENTS = 1000000;
+    private static final int NUM_TILES = 100;
+    private static final int SIZE = HeatmapRasterizer.TILE_SIZE;
+
+    private EventStore store;
+    private BitSet visible;
+    private HeatmapRasterizer rasterizer;
+
+    public void setUp() {
+        store = new EventStore(new StringDictionary());
+        visible = new BitSet();
+        rasterizer = new HeatmapRasterizer(HeatmapRasterizer.DEFAULT_RADIUS,
+                HeatmapRasterizer.DEFAULT_SCALE);
+    }
+
+    @Test
+    public void testPassRender() {
+        // the whole world at zoom 0, where the equator and prime meridian meet at the center
+        add(0, 0);
+        int[] pixels = render(0, 0, 0);
+        assertNotNull(pixels);
+        int center = pixels[SIZE / 2 * SIZE + SIZE / 2];
+        assertTrue(alpha(center) > 0);
+        assertEquals(0, pixels[0]);
+        assertEquals(0, pixels[SIZE / 2 * SIZE + SIZE / 2 + 2 * HeatmapRasterizer.DEFAULT_RADIUS]);
+
+        // more events in one place make it hotter
+        add(0, 0);
+        add(0, 0);
+        int hotter = render(0, 0, 0)[SIZE / 2 * SIZE + SIZE / 2];
+        assertTrue(alpha(hotter) > alpha(center));
+
+        // zoomed in past the clusters, the events near the tile are counted one by one
+        assertNotNull(render(12, 2048, 2048));
+        assertNotNull(render(12, 2047, 2047));
+        assertNull(render(12, 2050, 2048));
+    }
+
+    @Test
+    public void testFailRender() {
+        add(40.2, -111.6);
+        add(41.9, 12.5);
+        visible.clear(1);
+
+        // tiles with no events on the map near them are left empty
+        assertNull(render(2, 3, 0));
+        assertNull(render(2, 2, 1));
+        assertNotNull(render(2, 0, 1));
+        assertNull(new HeatmapRasterizer(HeatmapRasterizer.DEFAULT_RADIUS,
+                HeatmapRasterizer.DEFAULT_SCALE).render(store,
+                new SpatialGrid(store, SpatialGrid.DEFAULT_CELL_DEGREES),
+                new ClusterPyramid(store, new BitSet()), new BitSet(), 0, 0, 0));
+    }
+
+    @Test
+    public void testAbnormalRender() {
+        // an event just west of the 180th meridian warms the western edge of the first tile
+        add(0, 179.9);
+        int[] pixels = render(2, 0, 2);
+        assertNotNull(pixels);
+        assertTrue(alpha(pixels[0]) > 0);
+        assertNotNull(render(2, 3, 2));
+
+        // an event at the pole is drawn at the top edge of the map
+        setUp();
+        add(89.9, 0);
+        pixels = render(1, 1, 0);
+        assertNotNull(pixels);
+        assertTrue(alpha(pixels[0]) > 0);
+        assertNull(render(1, 1, 1));
+    }
+
+    @Test
+    public void testBenchmarkRender() {
+        Random random = new Random(240);
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            add(random.nextDouble() * 160 - 80, random.nextDouble() * 360 - 180);
+        }
+        SpatialGrid grid = new SpatialGrid(store, SpatialGrid.DEFAULT_CELL_DEGREES);
+        ClusterPyramid pyramid = new ClusterPyramid(store, visible);
+
+        // tiles at every zoom, from the whole world down to a single town
+        int numDrawn = 0;
+        for (int i = 0; i < NUM_TILES; i++) {
+            int zoom = i % 12;
+            int tiles = 1 << zoom;
+            int x = random.nextInt(tiles);
+            int y = tiles / 4 + random.nextInt(Math.max(1, tiles / 2));
+            int[] pixels = rasterizer.render(store, grid, pyramid, visible, zoom, x, y);
+            if (pixels != null) {
+                assertEquals(SIZE * SIZE, pixels.length);
+                numDrawn++;
+            }
+        }
+
+        // the map is covered evenly, so most tiles away from the poles have some heat
+        assertTrue(numDrawn > NUM_TILES / 2);
+    }
+
+    private int[] render(int zoom, int x, int y) {
+        SpatialGrid grid = new SpatialGrid(store, SpatialGrid.DEFAULT_CELL_DEGREES);
+        return rasterizer.render(store, grid, new ClusterPyramid(store, visible), visible,
+                zoom, x, y);
+    }
+
+    private void add(double latitude, double longitude) {
+        Event event = new Event("e" + store.size(), "dyl", "p", latitude, longitude,
+                "USA", "Provo", "Birth", 2000);
+        visible.set(store.add(event));
+    }
+
+    private static int alpha(int argb) {
+        return argb >>> 24;
+    }
+}
@@ -0,0 +1,78 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import dbModels.Event;
+
+public class LifeEventComparatorTest extends TestCase {
+
+    private StringDictionary dictionary;
+    private EventStore store;
+
+    public void setUp() {
+        dictionary = new StringDictionary();
+        store = new EventStore(dictionary);
+    }
+
+    @Test
+    public void testPassSort() {
+        int death = add("e1", "DEATH", 1900);
+        int marriage = add("e2", "Marriage", 1950);
+        int baptism = add("e3", "baptism", 1950);
+        int birth = add("e4", "Birth", 2000);
+        int census = add("e5", "Census", 1920);
+        List<Integer> ordinals = Arrays.asList(death, marriage, baptism, birth, census);
+
+        Collections.sort(ordinals, new LifeEventComparator(store, dictionary));
+
+        // birth first and death last whatever their case and year, the rest by year then type
+        assertEquals(Arrays.asList(birth, census, baptism, marriage, death), ordinals);
+    }
+
+    @Test
+    public void testFailSort() {
+        // without birth or death types, nothing is ranked before or after the rest
+        int noType = add("e1", null, 1900);
+        int other = add("e2", "Census", 1800);
+        List<Integer> ordinals = Arrays.asList(noType, other);
+        Collections.sort(ordinals, new LifeEventComparator(store, dictionary));
+        assertEquals(Arrays.asList(other, noType), ordinals);
+    }
+
+    @Test
+    public void testAbnormalSort() {
+        // types differing only in case, then IDs, break ties so insertion order never matters
+        int upper = add("e1", "Census", 1900);
+        int lower = add("e2", "census", 1900);
+        int second = add("e0", "census", 1900);
+        LifeEventComparator comparator = new LifeEventComparator(store, dictionary);
+        assertTrue(comparator.compare(upper, lower) < 0);
+        assertTrue(comparator.compare(second, lower) < 0);
+        assertEquals(0, comparator.compare(lower, lower));
+
+        // every event is distinct, so sorting the same events in any order gives one result
+        List<Integer> ordinals = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ordinals.add(add("m" + (100 + i), i % 2 == 0 ? "Census" : "census", 1999 - i / 4));
+        }
+        List<Integer> reversed = new ArrayList<>(ordinals);
+        Collections.reverse(reversed);
+        Collections.sort(ordinals, comparator);
+        Collections.sort(reversed, comparator);
+        assertEquals(ordinals, reversed);
+        for (int i = 1; i < ordinals.size(); i++) {
+            assertTrue(comparator.compare(ordinals.get(i - 1), ordinals.get(i)) < 0);
+        }
+    }
+
+    private int add(String eventID, String type, int year) {
+        return store.add(new Event(eventID, "dyl", "p1", 1, 2, "USA", "Provo", type, year));
+    }
+}
@@ -0,0 +1,92 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LineSimplifierTest extends TestCase {
+
+    private static final int NUM_POINTS = 100000;
+
+    @Test
+    public void testPassSimplify() {
+        // a life story that travels along the equator, then turns north
+        double[] latitudes = {0, 0, 0, 0, 10};
+        double[] longitudes = {0, 5, 10, 20, 20};
+
+        // the points along the equator add nothing, so only the turn is kept
+        int[] kept = new LineSimplifier(3, LineSimplifier.DEFAULT_TOLERANCE).simplify(
+                latitudes, longitudes);
+        assertTrue(Arrays.equals(new int[] {0, 3, 4}, kept));
+
+        // a small detour only shows when zoomed in
+        latitudes = new double[] {0, 0.01, 0};
+        longitudes = new double[] {0, 5, 10};
+        assertTrue(Arrays.equals(new int[] {0, 2}, new LineSimplifier(2,
+                LineSimplifier.DEFAULT_TOLERANCE).simplify(latitudes, longitudes)));
+        assertTrue(Arrays.equals(new int[] {0, 1, 2}, new LineSimplifier(12,
+                LineSimplifier.DEFAULT_TOLERANCE).simplify(latitudes, longitudes)));
+    }
+
+    @Test
+    public void testFailSimplify() {
+        // a line between neighboring towns is smaller than a pixel when zoomed out
+        double[] latitudes = {40.2338, 40.2969};
+        double[] longitudes = {-111.6585, -111.6946};
+        assertEquals(0, new LineSimplifier(0, LineSimplifier.DEFAULT_TOLERANCE).simplify(
+                latitudes, longitudes).length);
+        assertEquals(2, new LineSimplifier(10, LineSimplifier.DEFAULT_TOLERANCE).simplify(
+                latitudes, longitudes).length);
+
+        // lines between towns in the same pixel share a key
+        LineSimplifier simplifier = new LineSimplifier(0, LineSimplifier.DEFAULT_TOLERANCE);
+        assertEquals(simplifier.getPixelKey(latitudes[0], longitudes[0]),
+                simplifier.getPixelKey(latitudes[1], longitudes[1]));
+        assertFalse(simplifier.getPixelKey(0, 0) == simplifier.getPixelKey(40, -111));
+    }
+
+    @Test
+    public void testAbnormalSimplify() {
+        LineSimplifier simplifier = new LineSimplifier(4, LineSimplifier.DEFAULT_TOLERANCE);
+        assertEquals(0, simplifier.simplify(new double[0], new double[0]).length);
+        assertEquals(0, simplifier.simplify(new double[] {10}, new double[] {10}).length);
+        // repeated points are dropped rather than dividing by a zero length chord
+        assertTrue(Arrays.equals(new int[] {0, 3}, simplifier.simplify(
+                new double[] {0, 0, 0, 10}, new double[] {0, 0, 0, 0})));
+
+        // crossing the 180th meridian goes the short way, so the middle point is on the line
+        assertTrue(Arrays.equals(new int[] {0, 2}, simplifier.simplify(
+                new double[] {-17, -17, -17}, new double[] {178, 180, -178})));
+        // the poles are clamped to the edge of the map
+        assertEquals(2, simplifier.simplify(new double[] {90, -90},
+                new double[] {0, 0}).length);
+    }
+
+    @Test
+    public void testBenchmarkSimplify() {
+        // a long random walk of points, like a dense life story line
+        Random random = new Random(240);
+        double[] latitudes = new double[NUM_POINTS];
+        double[] longitudes = new double[NUM_POINTS];
+        for (int i = 1; i < NUM_POINTS; i++) {
+            latitudes[i] = Math.max(-80, Math.min(80,
+                    latitudes[i - 1] + random.nextGaussian() * 0.1));
+            longitudes[i] = longitudes[i - 1] + random.nextGaussian() * 0.1;
+        }
+
+        int[] coarse = new LineSimplifier(2, LineSimplifier.DEFAULT_TOLERANCE).simplify(
+                latitudes, longitudes);
+        int[] fine = new LineSimplifier(10, LineSimplifier.DEFAULT_TOLERANCE).simplify(
+                latitudes, longitudes);
+
+        // zoomed out, the wandering within each pixel is left out
+        assertTrue(coarse.length < fine.length);
+        assertTrue(coarse.length < NUM_POINTS / 20);
+        // both ends of the line are always kept
+        assertEquals(0, coarse[0]);
+        assertEquals(NUM_POINTS - 1, coarse[coarse.length - 1]);
+    }
+}
@@ -0,0 +1,172 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import dbModels.Person;
+
+public class RelationshipCalculatorTest extends TestCase {
+
+    private static final int GENERATION_SIZE = 30000;
+    private static final int NUM_GENERATIONS = 10;
+    private static final int NUM_QUERIES = 10000;
+    private static final int PEDIGREE_GENERATIONS = 14; // 16k people above each grandfather
+
+    private List<Person> people;
+    private Map<String, Integer> personOrdinals;
+
+    public void setUp() {
+        people = new ArrayList<>();
+        personOrdinals = new HashMap<>();
+    }
+
+    @Test
+    public void testPassDescribe() {
+        // two grandparents with two children, each of whom has a line of descendants
+        add("gf", "m", null, null, null);
+        add("gm", "f", null, null, null);
+        add("a", "m", "gf", "gm", null);
+        add("b", "f", "gf", "gm", null);
+        add("a1", "f", "a", null, "a1s");
+        add("a1s", "m", null, null, "a1");
+        add("b1", "m", null, "b", null);
+        add("a2", "m", null, "a1", null);
+        add("b2", "f", "b1", null, null);
+        add("a3", "m", "a2", null, null);
+        RelationshipCalculator calculator = new RelationshipCalculator(people, personOrdinals);
+
+        assertEquals("Self", calculator.describe("a", "a"));
+        assertEquals("Father", calculator.describe("a", "gf"));
+        assertEquals("Grandmother", calculator.describe("a1", "gm"));
+        assertEquals("Great-Great-Grandfather", calculator.describe("a3", "gf"));
+        assertEquals("Daughter", calculator.describe("a", "a1"));
+        assertEquals("Great-Grandson", calculator.describe("a", "a3"));
+        assertEquals("Sister", calculator.describe("a", "b"));
+        assertEquals("Aunt", calculator.describe("a1", "b"));
+        assertEquals("Nephew", calculator.describe("a", "b1"));
+        assertEquals("Great-Nephew", calculator.describe("b", "a2"));
+        assertEquals("First Cousin", calculator.describe("a1", "b1"));
+        assertEquals("First Cousin Once Removed", calculator.describe("a1", "b2"));
+        assertEquals("Second Cousin", calculator.describe("a2", "b2"));
+        assertEquals("Second Cousin Once Removed", calculator.describe("b2", "a3"));
+        assertEquals("Spouse", calculator.describe("a1", "a1s"));
+    }
+
+    @Test
+    public void testFailDescribe() {
+        add("p1", "m", null, null, null);
+        add("p2", "f", null, null, null);
+        add("c1", "m", "p1", null, null);
+        RelationshipCalculator calculator = new RelationshipCalculator(people, personOrdinals);
+
+        assertNull(calculator.describe("p1", "p2"));
+        assertNull(calculator.describe("c1", "p2"));
+        assertNull(calculator.describe("p1", "unknown"));
+        assertNull(calculator.describe(null, "p1"));
+    }
+
+    @Test
+    public void testAbnormalDescribe() {
+        // pedigree collapse: a child of first cousins reaches the same great-grandparents twice
+        add("gf", "m", null, null, null);
+        add("a", "m", "gf", null, null);
+        add("b", "f", "gf", null, null);
+        add("a1", "m", "a", null, null);
+        add("b1", "f", "b", null, null);
+        add("c", "f", "a1", "b1", null);
+        // bad data where two people are each other's father
+        add("x", "m", "y", null, null);
+        add("y", "m", "x", null, null);
+        RelationshipCalculator calculator = new RelationshipCalculator(people, personOrdinals);
+
+        assertEquals("Great-Grandfather", calculator.describe("c", "gf"));
+        assertEquals("Father", calculator.describe("c", "a1"));
+        assertEquals("Father", calculator.describe("x", "y"));
+        assertNull(calculator.describe("x", "c"));
+    }
+
+    @Test
+    public void testAbnormalDescribeLargePedigrees() {
+        // a paternal and a maternal grandfather, each with a full pedigree of 14 generations,
+        // are in the same family through their grandchild but share no ancestor
+        addPedigree("f", "m", PEDIGREE_GENERATIONS);
+        addPedigree("m", "m", PEDIGREE_GENERATIONS);
+        add("dad", "m", "f", null, null);
+        add("mom", "f", "m", null, null);
+        add("child", "m", "dad", "mom", null);
+        RelationshipCalculator calculator = new RelationshipCalculator(people, personOrdinals);
+
+        assertNull(calculator.describe("f", "m"));
+        // each pedigree has 16k people, but only the first ancestors of each are visited
+        assertTrue(calculator.getLastVisited() <= 2 * RelationshipCalculator.MAX_ANCESTORS);
+        // a near relationship ends the search within a few generations of either pedigree
+        assertEquals("Grandfather", calculator.describe("child", "m"));
+        assertTrue(calculator.getLastVisited() < 16);
+    }
+
+    @Test
+    public void testBenchmarkDescribe() {
+        // ten generations of 30k people, each with a random father and mother
+        // from the generation before, gives a 300k person tree full of distant cousins
+        Random random = new Random(240);
+        for (int generation = 0; generation < NUM_GENERATIONS; generation++) {
+            for (int i = 0; i < GENERATION_SIZE; i++) {
+                String fatherID = null;
+                String motherID = null;
+                if (generation > 0) {
+                    fatherID = id(generation - 1, 2 * random.nextInt(GENERATION_SIZE / 2));
+                    motherID = id(generation - 1, 2 * random.nextInt(GENERATION_SIZE / 2) + 1);
+                }
+                add(id(generation, i), i % 2 == 0 ? "m" : "f", fatherID, motherID, null);
+            }
+        }
+        RelationshipCalculator calculator = new RelationshipCalculator(people, personOrdinals);
+
+        // a query only visits the two people's pedigrees, never the rest of the tree
+        int maxVisited = 2 * ((1 << NUM_GENERATIONS) - 1);
+        int numRelated = 0;
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            String from = id(NUM_GENERATIONS - 1, random.nextInt(GENERATION_SIZE));
+            String to = id(NUM_GENERATIONS - 1 - random.nextInt(3),
+                    random.nextInt(GENERATION_SIZE));
+            if (calculator.describe(from, to) != null) {
+                numRelated++;
+            }
+            assertTrue(calculator.getLastVisited() <= maxVisited);
+        }
+
+        // most pairs are distant cousins, though some share no ancestor within ten generations
+        assertTrue(numRelated > NUM_QUERIES / 2);
+    }
+
+    /**
+     * Adds a person and a full pedigree of ancestors above them, with IDs extending theirs
+     */
+    private void addPedigree(String personID, String gender, int generations) {
+        boolean hasParents = generations > 1;
+        add(personID, gender, hasParents ? personID + "f" : null,
+                hasParents ? personID + "m" : null, null);
+        if (hasParents) {
+            addPedigree(personID + "f", "m", generations - 1);
+            addPedigree(personID + "m", "f", generations - 1);
+        }
+    }
+
+    private static String id(int generation, int index) {
+        return generation + "_" + index;
+    }
+
+    private void add(String personID, String gender, String fatherID, String motherID,
+                     String spouseID) {
+        personOrdinals.put(personID, people.size());
+        people.add(new Person(personID, "dyl", personID, "Webb", gender,
+                fatherID, motherID, spouseID));
+    }
+}
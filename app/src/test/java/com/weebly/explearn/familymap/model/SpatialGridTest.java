@@ -0,0 +1,113 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import dbModels.Event;
+
+public class SpatialGridTest extends TestCase {
+
+    private static final int NUM_EVENTS = 1000000;
+    private static final int NUM_QUERIES = 200;
+
+    private EventStore store;
+    private BitSet visible;
+
+    public void setUp() {
+        store = new EventStore(new StringDictionary());
+        visible = new BitSet();
+    }
+
+    @Test
+    public void testPassQuery() {
+        add(40.2, -111.6); // provo
+        add(40.7, -111.9); // salt lake city
+        add(41.9, 12.5); // rome
+        add(-33.9, 151.2); // sydney
+        SpatialGrid grid = new SpatialGrid(store, SpatialGrid.DEFAULT_CELL_DEGREES);
+
+        assertTrue(Arrays.equals(new int[] {0, 1}, sorted(grid.query(39, -113, 42, -110,
+                visible, 10))));
+        assertTrue(Arrays.equals(new int[] {2}, grid.query(30, 0, 50, 20, visible, 10)));
+        assertEquals(4, grid.query(-90, -180, 90, 180, visible, 10).length);
+    }
+
+    @Test
+    public void testFailQuery() {
+        add(40.2, -111.6);
+        add(40.7, -111.9);
+        add(41.9, 12.5);
+        visible.clear(1);
+        SpatialGrid grid = new SpatialGrid(store, SpatialGrid.DEFAULT_CELL_DEGREES);
+
+        // events outside the box or off the map are never returned
+        assertEquals(0, grid.query(-10, -10, 10, 10, visible, 10).length);
+        assertTrue(Arrays.equals(new int[] {0}, grid.query(39, -113, 42, -110, visible, 10)));
+        // events in a shared cell but just outside the box are left out
+        assertEquals(0, grid.query(40.3, -111.7, 40.6, -111.5, visible, 10).length);
+        assertEquals(1, grid.query(-90, -180, 90, 180, visible, 1).length);
+    }
+
+    @Test
+    public void testAbnormalQuery() {
+        add(-17.7, 178.0); // fiji
+        add(-14.3, -170.7); // american samoa
+        add(90.0, 0.0); // north pole
+        add(-90.0, 180.0); // south pole
+        SpatialGrid grid = new SpatialGrid(store, SpatialGrid.DEFAULT_CELL_DEGREES);
+
+        // a box crossing the 180th meridian
+        assertTrue(Arrays.equals(new int[] {0, 1}, sorted(grid.query(-20, 170, -10, -165,
+                visible, 10))));
+        assertEquals(0, grid.query(-20, -165, -10, 170, visible, 10).length);
+        assertTrue(Arrays.equals(new int[] {2}, grid.query(89, -1, 90, 1, visible, 10)));
+        assertTrue(Arrays.equals(new int[] {3}, grid.query(-90, 179, -89, 180, visible, 10)));
+    }
+
+    @Test
+    public void testBenchmarkQuery() {
+        Random random = new Random(240);
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            add(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+        }
+        SpatialGrid grid = new SpatialGrid(store, SpatialGrid.DEFAULT_CELL_DEGREES);
+
+        // a screen showing a region 10 degrees across
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            double south = random.nextDouble() * 160 - 80;
+            double west = random.nextDouble() * 340 - 170;
+            int numFound = grid.query(south, west, south + 10, west + 10, visible,
+                    Integer.MAX_VALUE).length;
+
+            int numScanned = 0;
+            for (int j = 0; j < store.size(); j++) {
+                double latitude = store.getLatitude(j);
+                double longitude = store.getLongitude(j);
+                if (visible.get(j) && latitude >= south && latitude <= south + 10
+                        && longitude >= west && longitude <= west + 10) {
+                    numScanned++;
+                }
+            }
+            assertEquals(numScanned, numFound);
+            // a query stops reading cells once it has found as many events as it may draw
+            assertEquals(Math.min(10, numScanned), grid.query(south, west, south + 10,
+                    west + 10, visible, 10).length);
+        }
+    }
+
+    private void add(double latitude, double longitude) {
+        Event event = new Event("e" + store.size(), "dyl", "p", latitude, longitude,
+                "USA", "Provo", "Birth", 2000);
+        visible.set(store.add(event));
+    }
+
+    private static int[] sorted(int[] ordinals) {
+        Arrays.sort(ordinals);
+        return ordinals;
+    }
+}
@@ -0,0 +1,132 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import dbModels.Event;
+import dbModels.Person;
+
+public class StringDictionaryTest extends TestCase {
+
+    private static final int NUM_EVENTS = 100000;
+    private static final int STRING_OVERHEAD = 40; // bytes of a string and its array, less text
+
+    private final String[] types = {"Birth", "Marriage", "Death", "Baptism", "Graduation"};
+    private final String[] cities = {"Provo", "SLC", "Rome", "London", "Cairo", "Lima"};
+    private final String[] countries = {"USA", "Italy", "England", "Egypt", "Peru"};
+
+    private StringDictionary dictionary;
+
+    public void setUp() {
+        dictionary = new StringDictionary();
+    }
+
+    @Test
+    public void testPassIntern() {
+        // equal strings from different responses become one instance with one code
+        Event a = new Event("e1", new String("dyl"), "p1", 1, 2, new String("USA"),
+                new String("Provo"), new String("Birth"), 1900);
+        Event b = new Event("e2", new String("dyl"), "p1", 1, 2, new String("USA"),
+                new String("Provo"), new String("birth"), 1900);
+        assertNotSame(a.getCity(), b.getCity());
+        dictionary.internEvent(a);
+        dictionary.internEvent(b);
+        assertSame(a.getCity(), b.getCity());
+        assertSame(a.getCountry(), b.getCountry());
+        assertSame(a.getAssociatedUsername(), b.getAssociatedUsername());
+
+        // differently cased types keep their own codes but share a lowercase code
+        int upper = dictionary.getCode("Birth");
+        int lower = dictionary.getCode("birth");
+        assertTrue(upper != lower);
+        assertEquals(lower, dictionary.getLowerCode(upper));
+        assertEquals(lower, dictionary.getLowerCode(lower));
+        assertSame(b.getEventType(), dictionary.getLowerString(upper));
+
+        Person person = new Person("p1", new String("dyl"), "Dylan", "Webb", new String("m"),
+                null, null, null);
+        dictionary.internPerson(person);
+        assertSame(a.getAssociatedUsername(), person.getAssociatedUsername());
+        assertSame(dictionary.getString(dictionary.getCode("m")), person.getGender());
+    }
+
+    @Test
+    public void testFailIntern() {
+        assertEquals(StringDictionary.NONE, dictionary.intern(null));
+        assertEquals(StringDictionary.NONE, dictionary.getCode("missing"));
+        assertEquals(StringDictionary.NONE, dictionary.getCode(null));
+        assertNull(dictionary.getString(StringDictionary.NONE));
+        assertEquals(StringDictionary.NONE, dictionary.getLowerCode(StringDictionary.NONE));
+
+        // a null field stays null
+        Event event = new Event("e1", "dyl", "p1", 1, 2, null, null, null, 1900);
+        dictionary.internEvent(event);
+        assertNull(event.getCity());
+        assertNull(event.getEventType());
+
+        dictionary.intern("Provo");
+        dictionary.clear();
+        assertEquals(0, dictionary.size());
+        assertEquals(StringDictionary.NONE, dictionary.getCode("Provo"));
+    }
+
+    @Test
+    public void testPassCopy() {
+        int provo = dictionary.intern("Provo");
+        StringDictionary copy = new StringDictionary(dictionary);
+        assertEquals(provo, copy.getCode("Provo"));
+        assertSame(dictionary.getString(provo), copy.getString(provo));
+
+        // strings added to a copy leave the original as it was published
+        int lima = copy.intern("Lima");
+        assertEquals("lima", copy.getLowerString(lima));
+        assertEquals(StringDictionary.NONE, dictionary.getCode("Lima"));
+        assertEquals(2, dictionary.size());
+        assertEquals(4, copy.size());
+    }
+
+    @Test
+    public void testBenchmarkRetainedSize() {
+        // every event arrives with its own copies of the repeated strings, as parsed from json
+        ArrayList<Event> events = new ArrayList<>();
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            events.add(new Event("e" + i, new String("dyl"), "p" + i / 4, 1, 2,
+                    new String(countries[i % countries.length]),
+                    new String(cities[i % cities.length]), new String(types[i % types.length]),
+                    1900 + i % 100));
+        }
+        long before = retainedBytes(events);
+
+        for (Event event : events) {
+            dictionary.internEvent(event);
+        }
+        long after = retainedBytes(events);
+
+        // only one instance of each distinct string is left
+        assertTrue(before + " bytes before, " + after + " after", after * 1000 < before);
+    }
+
+    /**
+     * Estimates the bytes held by the distinct type, city, country and username instances
+     * of some events, counting a string shared by many events once
+     */
+    private static long retainedBytes(ArrayList<Event> events) {
+        Map<String, Boolean> distinct = new IdentityHashMap<>();
+        for (Event event : events) {
+            distinct.put(event.getEventType(), true);
+            distinct.put(event.getCity(), true);
+            distinct.put(event.getCountry(), true);
+            distinct.put(event.getAssociatedUsername(), true);
+        }
+        long bytes = 0;
+        for (String string : distinct.keySet()) {
+            bytes += STRING_OVERHEAD + 2L * string.length();
+        }
+        return bytes;
+    }
+}
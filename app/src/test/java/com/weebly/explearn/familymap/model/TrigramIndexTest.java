@@ -0,0 +1,69 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TrigramIndexTest extends TestCase {
+
+    private static final int NUM_RECORDS = 500000;
+    private static final int NUM_QUERIES = 1000;
+
+    @Test
+    public void testPassSearch() {
+        TrigramIndex index = new TrigramIndex();
+        index.add(0, "dylan", "webb");
+        index.add(1, "father", "webb");
+        index.add(2, "mother", "webb");
+
+        assertTrue(Arrays.equals(new int[] {0, 1, 2}, index.search("webb")));
+        assertTrue(Arrays.equals(new int[] {1, 2}, index.search("ther")));
+        assertTrue(Arrays.equals(new int[] {2}, index.search("other")));
+        assertTrue(Arrays.equals(new int[] {0}, index.search("dyl")));
+    }
+
+    @Test
+    public void testFailSearch() {
+        TrigramIndex index = new TrigramIndex();
+        index.add(0, "dylan", "webb");
+        index.add(0, "dylan", null);
+
+        assertEquals(0, index.search("funky").length);
+        // trigrams never span two fields
+        assertEquals(0, index.search("anw").length);
+        // the same record is only listed once
+        assertEquals(1, index.search("dyl").length);
+    }
+
+    @Test
+    public void testBenchmarkSearch() {
+        Random random = new Random(240);
+        String[] names = new String[NUM_RECORDS];
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            names[i] = randomName(random);
+            index.add(i, names[i], randomName(random));
+        }
+
+        // the postings of every trigram of the query are intersected, so a search only
+        // returns a handful of candidates rather than scanning every record
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            int record = random.nextInt(NUM_RECORDS);
+            String query = names[record].substring(1, 5);
+            int[] candidates = index.search(query);
+            assertTrue(Arrays.binarySearch(candidates, record) >= 0);
+            assertTrue(query, candidates.length < NUM_RECORDS / 1000);
+        }
+    }
+
+    private String randomName(Random random) {
+        char[] name = new char[6 + random.nextInt(4)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(name);
+    }
+}
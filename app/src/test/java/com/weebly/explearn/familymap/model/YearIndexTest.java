@@ -0,0 +1,119 @@
+package com.weebly.explearn.familymap.model;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import dbModels.Event;
+
+public class YearIndexTest extends TestCase {
+
+    private static final int NUM_EVENTS = 1000000;
+    private static final int NUM_STEPS = 10000;
+
+    private EventStore store;
+    private BitSet visible;
+
+    public void setUp() {
+        store = new EventStore(new StringDictionary());
+        visible = new BitSet();
+    }
+
+    @Test
+    public void testPassQuery() {
+        add(1950, 40.2, -111.6);
+        add(1900, 41.9, 12.5);
+        add(1950, 51.5, -0.1);
+        add(2000, -33.9, 151.2);
+        YearIndex index = new YearIndex(store);
+        assertEquals(1900, index.getFirstYear());
+        assertEquals(2000, index.getLastYear());
+
+        // earliest first, and in order of ordinal within a year
+        assertTrue(Arrays.equals(new int[] {1, 0, 2}, index.query(1900, 1950, visible, 10)));
+        assertTrue(Arrays.equals(new int[] {0, 2}, index.query(1950, 1950, visible, 10)));
+        assertTrue(Arrays.equals(new int[] {1, 0}, index.query(0, 3000, visible, 2)));
+        // only the events in the box, here everything west of the prime meridian
+        assertTrue(Arrays.equals(new int[] {0, 2}, index.query(1900, 2000, visible,
+                -90, -180, 90, 0, 10)));
+    }
+
+    @Test
+    public void testFailQuery() {
+        add(1950, 40.2, -111.6);
+        add(1950, 41.9, 12.5);
+        visible.clear(0);
+        YearIndex index = new YearIndex(store);
+
+        // events off the map and years without events find nothing
+        assertTrue(Arrays.equals(new int[] {1}, index.query(1950, 1950, visible, 10)));
+        assertEquals(0, index.query(1951, 2000, visible, 10).length);
+        assertEquals(0, index.query(1960, 1940, visible, 10).length);
+        assertEquals(0, index.query(1900, 2000, visible, 0).length);
+
+        YearIndex empty = new YearIndex(new EventStore(new StringDictionary()));
+        assertEquals(0, empty.getFirstYear());
+        assertEquals(0, empty.query(Integer.MIN_VALUE, Integer.MAX_VALUE, visible, 10).length);
+    }
+
+    @Test
+    public void testAbnormalQuery() {
+        // years before the common era and a box crossing the 180th meridian
+        add(-500, -17.7, 178.1);
+        add(1800, 21.3, -157.8);
+        add(1800, 0, 0);
+        YearIndex index = new YearIndex(store);
+        assertEquals(-500, index.getFirstYear());
+        assertTrue(Arrays.equals(new int[] {0, 1}, index.query(Integer.MIN_VALUE,
+                Integer.MAX_VALUE, visible, -90, 170, 90, -150, 10)));
+
+        // the parts of a range left after moving it, as a time slider does
+        assertTrue(Arrays.equals(new int[] {1951, 1960}, YearIndex.difference(1900, 1960,
+                1900, 1950)));
+        assertTrue(Arrays.equals(new int[] {1900, 1909, 1951, 1960}, YearIndex.difference(1900,
+                1960, 1910, 1950)));
+        assertTrue(Arrays.equals(new int[] {1900, 1910}, YearIndex.difference(1900, 1910,
+                1950, 1960)));
+        assertEquals(0, YearIndex.difference(1910, 1950, 1900, 1960).length);
+        assertEquals(0, YearIndex.difference(1960, 1900, 1900, 1960).length);
+    }
+
+    @Test
+    public void testBenchmarkQuery() {
+        Random random = new Random(240);
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            add(1500 + random.nextInt(525), random.nextDouble() * 160 - 80,
+                    random.nextDouble() * 360 - 180);
+        }
+        YearIndex index = new YearIndex(store);
+
+        // step a decade-wide window through the years, finding only what enters and leaves
+        int numChanged = 0;
+        int fromYear = index.getFirstYear();
+        for (int i = 0; i < NUM_STEPS; i++) {
+            int nextYear = index.getFirstYear() + i % (index.getLastYear() - index.getFirstYear());
+            int[] entered = YearIndex.difference(nextYear, nextYear + 9, fromYear, fromYear + 9);
+            int[] left = YearIndex.difference(fromYear, fromYear + 9, nextYear, nextYear + 9);
+            for (int j = 0; j < entered.length; j += 2) {
+                numChanged += index.query(entered[j], entered[j + 1], visible, NUM_EVENTS).length;
+            }
+            for (int j = 0; j < left.length; j += 2) {
+                numChanged += index.query(left[j], left[j + 1], visible, NUM_EVENTS).length;
+            }
+            fromYear = nextYear;
+        }
+
+        // each step moves a year, so about two years' worth of events change
+        assertTrue("changed " + numChanged, numChanged < 4L * NUM_STEPS * NUM_EVENTS / 525);
+    }
+
+    private void add(int year, double latitude, double longitude) {
+        Event event = new Event("e" + store.size(), "dyl", "p", latitude, longitude,
+                "USA", "Provo", "Birth", year);
+        visible.set(store.add(event));
+    }
+}
@@ -0,0 +1,109 @@
+package com.weebly.explearn.familymap.net;
+
+import com.google.gson.Gson;
+import com.weebly.explearn.familymap.model.DataCache;
+import com.weebly.explearn.familymap.model.StringDictionary;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import dbModels.Event;
+import dbModels.Person;
+import results.EventsResult;
+import results.PeopleResult;
+
+public class DataAsyncTaskTest extends TestCase {
+
+    private static final String AUTHTOKEN = "token";
+    private static final long LATENCY_MILLIS = 300; // added to every response of the stand-in
+    private static final int NUM_PEOPLE = 5000;
+    private static final int EVENTS_PER_PERSON = 4;
+
+    private StandInServer server;
+    private ServerProxy serverProxy;
+
+    public void setUp() throws IOException {
+        server = new StandInServer(LATENCY_MILLIS);
+        server.setEventsJson(StandInServer.toEventsJson(1, EVENTS_PER_PERSON));
+        serverProxy = server.getServerProxy();
+    }
+
+    public void tearDown() {
+        server.stop();
+        DataCache.getInstance().logout();
+    }
+
+    @Test
+    public void testPassRetrieveData() {
+        assertNull(DataAsyncTask.retrieveData(serverProxy, AUTHTOKEN));
+
+        DataCache dc = DataCache.getInstance();
+        assertEquals(1, dc.getPeople().size());
+        assertEquals(EVENTS_PER_PERSON, dc.getEvents().size());
+        assertNotNull(dc.getEvents().get("e0_0"));
+        // both requests are in flight together, so only one delay is waited out
+        assertEquals(2, server.getMaxInFlight());
+    }
+
+    @Test
+    public void testFailRetrieveData() {
+        DataCache dc = DataCache.getInstance();
+
+        // the people's failure is reported even though the events arrived
+        server.setPeopleJson(new Gson().toJson(new PeopleResult("Error: Invalid auth token")));
+        assertEquals("Error: Invalid auth token",
+                DataAsyncTask.retrieveData(serverProxy, AUTHTOKEN));
+        assertTrue(dc.getPeople().isEmpty());
+
+        // nothing is stored unless both requests succeed
+        server.setPeopleJson(StandInServer.toPeopleJson(1));
+        server.setEventsJson(new Gson().toJson(new EventsResult("Error: Internal server error")));
+        assertEquals("Error: Internal server error",
+                DataAsyncTask.retrieveData(serverProxy, AUTHTOKEN));
+        assertTrue(dc.getPeople().isEmpty());
+        assertTrue(dc.getEvents().isEmpty());
+
+        // a server which can't be reached fails both requests, and the people's is reported
+        server.stop();
+        assertEquals("Invalid input", DataAsyncTask.retrieveData(serverProxy, AUTHTOKEN));
+    }
+
+    @Test
+    public void testBenchmarkRetrieveData() {
+        server.setPeopleJson(StandInServer.toPeopleJson(NUM_PEOPLE));
+        server.setEventsJson(StandInServer.toEventsJson(NUM_PEOPLE, EVENTS_PER_PERSON));
+
+        server.resetMaxInFlight();
+        retrieveSequentially();
+        assertEquals(1, server.getMaxInFlight());
+        DataCache.getInstance().logout();
+
+        server.resetMaxInFlight();
+        assertNull(DataAsyncTask.retrieveData(serverProxy, AUTHTOKEN));
+        assertEquals(NUM_PEOPLE, DataCache.getInstance().getPeople().size());
+        assertEquals(NUM_PEOPLE * EVENTS_PER_PERSON, DataCache.getInstance().getEvents().size());
+        // the round trips and the parsing overlap, so only one delay is waited out
+        assertEquals(2, server.getMaxInFlight());
+    }
+
+    /**
+     * Retrieves and stores the family tree one request after the other, as it was before
+     */
+    private void retrieveSequentially() {
+        PeopleResult peopleResult = serverProxy.getAllPeople(AUTHTOKEN);
+        EventsResult eventsResult = serverProxy.getAllEvents(AUTHTOKEN);
+        DataCache dc = DataCache.getInstance();
+        StringDictionary dictionary = new StringDictionary(dc.getDictionary());
+        for (Person person : peopleResult.getData()) {
+            dictionary.internPerson(person);
+        }
+        for (Event event : eventsResult.getData()) {
+            dictionary.internEvent(event);
+        }
+        dc.insertPeople(peopleResult.getData());
+        dc.insertEvents(eventsResult.getData());
+    }
+}
@@ -0,0 +1,126 @@
+package com.weebly.explearn.familymap.net;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+import dbModels.Event;
+import dbModels.Person;
+import results.EventsResult;
+import results.PeopleResult;
+
+public class JsonAdaptersTest extends TestCase {
+
+    private static final int NUM_PEOPLE = 25000;
+    private static final int EVENTS_PER_PERSON = 4;
+
+    private final Gson reflective = new Gson();
+
+    @Test
+    public void testPassRoundTrip() {
+        // the adapters write exactly what reflection wrote, and read it back the same
+        String people = StandInServer.toPeopleJson(3);
+        PeopleResult peopleResult = JsonAdapters.GSON.fromJson(people, PeopleResult.class);
+        assertTrue(peopleResult.isSuccess());
+        assertNull(peopleResult.getMessage());
+        assertEquals(reflective.fromJson(people, PeopleResult.class).getData(),
+                peopleResult.getData());
+        assertEquals(people, JsonAdapters.GSON.toJson(peopleResult));
+
+        String events = StandInServer.toEventsJson(3, EVENTS_PER_PERSON);
+        EventsResult eventsResult = JsonAdapters.GSON.fromJson(events, EventsResult.class);
+        assertEquals(reflective.fromJson(events, EventsResult.class).getData(),
+                eventsResult.getData());
+        assertEquals(events, JsonAdapters.GSON.toJson(eventsResult));
+
+        Person person = new Person("p1", "dyl", "Dylan", "Webb", "m", "p2", "p3", "p4");
+        assertEquals(reflective.toJson(person), JsonAdapters.GSON.toJson(person));
+        assertEquals(person, JsonAdapters.GSON.fromJson(reflective.toJson(person), Person.class));
+    }
+
+    @Test
+    public void testFailRoundTrip() {
+        EventsResult error = new EventsResult("Error: Invalid auth token");
+        assertEquals(reflective.toJson(error), JsonAdapters.GSON.toJson(error));
+        EventsResult result = JsonAdapters.GSON.fromJson(reflective.toJson(error),
+                EventsResult.class);
+        assertFalse(result.isSuccess());
+        assertEquals("Error: Invalid auth token", result.getMessage());
+        assertNull(result.getData());
+
+        // a number which isn't one fails as it did with reflection
+        try {
+            JsonAdapters.GSON.fromJson("{\"eventID\":\"e1\",\"year\":\"soon\"}", Event.class);
+            fail();
+        }
+        catch (JsonSyntaxException exception) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAbnormalRoundTrip() {
+        // fields in any order, explicit nulls and unknown fields are read like reflection
+        String json = "{\"success\":true,\"extra\":[1,{\"a\":2}],\"data\":[{\"city\":null,"
+                + "\"year\":\"1900\",\"latitude\":1.5,\"eventID\":\"e1\",\"tags\":{}},null],"
+                + "\"message\":null}";
+        EventsResult result = JsonAdapters.GSON.fromJson(json, EventsResult.class);
+        EventsResult expected = reflective.fromJson(json, EventsResult.class);
+        assertTrue(result.isSuccess());
+        assertEquals(reflective.toJson(expected), reflective.toJson(result));
+        assertEquals(1900, result.getData().get(0).getYear());
+        assertNull(result.getData().get(1));
+
+        // missing fields keep their defaults
+        Person person = JsonAdapters.GSON.fromJson("{}", Person.class);
+        assertEquals(reflective.toJson(reflective.fromJson("{}", Person.class)),
+                reflective.toJson(person));
+        assertNull(JsonAdapters.GSON.fromJson("null", EventsResult.class));
+        assertFalse(JsonAdapters.GSON.fromJson("{}", PeopleResult.class).isSuccess());
+    }
+
+    @Test
+    public void testBenchmarkDecode() {
+        String json = StandInServer.toEventsJson(NUM_PEOPLE, EVENTS_PER_PERSON);
+        // decode once first so neither path counts the loading of its classes
+        decode(reflective, json);
+        decode(JsonAdapters.GSON, json);
+
+        long bytes = allocatedBytes();
+        assertEquals(NUM_PEOPLE * EVENTS_PER_PERSON, decode(reflective, json));
+        long reflectiveBytes = allocatedBytes() - bytes;
+
+        bytes = allocatedBytes();
+        assertEquals(NUM_PEOPLE * EVENTS_PER_PERSON, decode(JsonAdapters.GSON, json));
+        long adapterBytes = allocatedBytes() - bytes;
+
+        // the adapters build each event straight from the stream, with no reflection or
+        // boxed fields, so they allocate less; both counts are 0 on a jvm that can't tell
+        assertTrue("reflective " + reflectiveBytes + " bytes, adapters " + adapterBytes
+                + " bytes", adapterBytes <= reflectiveBytes);
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, or 0 if the jvm doesn't count them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static int decode(Gson gson, String json) {
+        ArrayList<Event> events = gson.fromJson(json, EventsResult.class).getData();
+        return events.size();
+    }
+}
@@ -0,0 +1,139 @@
+package com.weebly.explearn.familymap.net;
+
+import com.google.gson.Gson;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import dbModels.Event;
+import requests.RegisterRequest;
+import results.EventsResult;
+import results.LoginResult;
+import results.Result;
+
+public class ServerProxyGzipTest extends TestCase {
+
+    private static final String AUTHTOKEN = "token";
+    private static final int NUM_PEOPLE = 5000;
+    private static final int EVENTS_PER_PERSON = 4;
+
+    private StandInServer server;
+    private ServerProxy serverProxy;
+
+    public void setUp() throws IOException {
+        server = new StandInServer(0);
+        server.setGzip(true);
+        serverProxy = server.getServerProxy();
+    }
+
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testPassGzip() {
+        String json = StandInServer.toEventsJson(50, EVENTS_PER_PERSON);
+        server.setEventsJson(json);
+
+        // both the string and the streaming path decompress the response
+        EventsResult result = serverProxy.getAllEvents(AUTHTOKEN);
+        assertTrue(result.isSuccess());
+        assertEquals(50 * EVENTS_PER_PERSON, result.getData().size());
+        long bytesSent = server.getBytesSent();
+        assertTrue(bytesSent * 5 < json.length());
+
+        ArrayList<Event> events = new ArrayList<>();
+        assertTrue(serverProxy.getAllEvents(AUTHTOKEN, collect(events)).isSuccess());
+        assertEquals(result.getData(), events);
+        assertEquals(2 * bytesSent, server.getBytesSent());
+
+        // a server which ignores the header is still understood
+        server.setGzip(false);
+        assertEquals(result.getData(), serverProxy.getAllEvents(AUTHTOKEN).getData());
+        assertEquals(2 * bytesSent + json.length(), server.getBytesSent());
+    }
+
+    @Test
+    public void testFailGzip() {
+        // compressed errors and messages arrive as they would uncompressed
+        server.setEventsJson(new Gson().toJson(new EventsResult("Error: Invalid auth token")));
+        assertEquals("Error: Invalid auth token",
+                serverProxy.getAllEvents(AUTHTOKEN).getMessage());
+        Result result = serverProxy.getAllEvents(AUTHTOKEN, collect(new ArrayList<Event>()));
+        assertFalse(result.isSuccess());
+        assertEquals("Error: Invalid auth token", result.getMessage());
+
+        server.setEventsJson("Internal server error");
+        assertEquals("Internal server error", serverProxy.getAllEvents(AUTHTOKEN).getMessage());
+        result = serverProxy.getAllEvents(AUTHTOKEN, collect(new ArrayList<Event>()));
+        assertEquals("Internal server error", result.getMessage());
+    }
+
+    @Test
+    public void testAbnormalGzip() {
+        // request bodies are never compressed, since the server may not decompress them
+        RegisterRequest request = new RegisterRequest("dyl", "1234", "dyl@gmail.com", "Dylan",
+                "Webb", "m");
+        LoginResult result = serverProxy.register(request);
+        assertEquals("token", result.getAuthtoken());
+        assertNull(server.getRequestEncoding());
+        assertEquals(new Gson().toJson(request), server.getRequestBody());
+
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            name.append("D\u00fclan");
+        }
+        request = new RegisterRequest("dyl", "1234", "dyl@gmail.com", name.toString(), "Webb",
+                "m");
+        String json = new Gson().toJson(request);
+        result = serverProxy.register(request);
+        assertEquals("token", result.getAuthtoken());
+        assertNull(server.getRequestEncoding());
+        assertEquals(json, server.getRequestBody());
+        assertEquals(json.getBytes(StandardCharsets.UTF_8).length, server.getRequestLength());
+    }
+
+    @Test
+    public void testBenchmarkGzip() {
+        String json = StandInServer.toEventsJson(NUM_PEOPLE, EVENTS_PER_PERSON);
+        server.setEventsJson(json);
+        final int[] numStreamed = new int[1];
+        ServerProxy.Sink<Event> counter = new ServerProxy.Sink<Event>() {
+            @Override
+            public void accept(Event event) {
+                numStreamed[0]++;
+            }
+        };
+
+        server.setGzip(false);
+        long bytes = server.getBytesSent();
+        assertTrue(serverProxy.getAllEvents(AUTHTOKEN, counter).isSuccess());
+        long plainBytes = server.getBytesSent() - bytes;
+        assertEquals(NUM_PEOPLE * EVENTS_PER_PERSON, numStreamed[0]);
+
+        server.setGzip(true);
+        numStreamed[0] = 0;
+        bytes = server.getBytesSent();
+        assertTrue(serverProxy.getAllEvents(AUTHTOKEN, counter).isSuccess());
+        long gzipBytes = server.getBytesSent() - bytes;
+        assertEquals(NUM_PEOPLE * EVENTS_PER_PERSON, numStreamed[0]);
+
+        // the same usernames, places and event types repeat throughout the response
+        assertEquals(json.length(), plainBytes);
+        assertTrue(gzipBytes * 5 < plainBytes);
+    }
+
+    private static <T> ServerProxy.Sink<T> collect(final ArrayList<T> items) {
+        return new ServerProxy.Sink<T>() {
+            @Override
+            public void accept(T item) {
+                items.add(item);
+            }
+        };
+    }
+}
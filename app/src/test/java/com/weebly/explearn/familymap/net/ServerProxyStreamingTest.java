@@ -0,0 +1,153 @@
+package com.weebly.explearn.familymap.net;
+
+import com.google.gson.Gson;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import dbModels.Event;
+import dbModels.Person;
+import results.EventsResult;
+import results.PeopleResult;
+import results.Result;
+
+public class ServerProxyStreamingTest extends TestCase {
+
+    private static final String AUTHTOKEN = "token";
+    private static final int NUM_PEOPLE = 25000;
+    private static final int EVENTS_PER_PERSON = 4;
+    private static final int SAMPLE_INTERVAL = 10000; // events between heap samples
+
+    private StandInServer server;
+    private ServerProxy serverProxy;
+
+    public void setUp() throws IOException {
+        server = new StandInServer(0);
+        serverProxy = server.getServerProxy();
+    }
+
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testPassStream() {
+        server.setPeopleJson(StandInServer.toPeopleJson(3));
+        server.setEventsJson(StandInServer.toEventsJson(3, EVENTS_PER_PERSON));
+
+        ArrayList<Person> people = new ArrayList<>();
+        Result peopleResult = serverProxy.getAllPeople(AUTHTOKEN, collect(people));
+        assertTrue(peopleResult.isSuccess());
+        assertNull(peopleResult.getMessage());
+        assertEquals(serverProxy.getAllPeople(AUTHTOKEN).getData(), people);
+
+        // each event arrives whole and in the order the server sent them
+        ArrayList<Event> events = new ArrayList<>();
+        assertTrue(serverProxy.getAllEvents(AUTHTOKEN, collect(events)).isSuccess());
+        assertEquals(serverProxy.getAllEvents(AUTHTOKEN).getData(), events);
+        assertEquals("e0_0", events.get(0).getEventID());
+        assertEquals(40.2, events.get(0).getLatitude());
+    }
+
+    @Test
+    public void testFailStream() {
+        ArrayList<Event> events = new ArrayList<>();
+        server.setEventsJson(new Gson().toJson(new EventsResult("Error: Invalid auth token")));
+        Result result = serverProxy.getAllEvents(AUTHTOKEN, collect(events));
+        assertFalse(result.isSuccess());
+        assertEquals("Error: Invalid auth token", result.getMessage());
+        assertTrue(events.isEmpty());
+
+        // a response which isn't json is the server's message, as with the string path
+        server.setEventsJson("Internal server error");
+        result = serverProxy.getAllEvents(AUTHTOKEN, collect(events));
+        assertFalse(result.isSuccess());
+        assertEquals("Internal server error", result.getMessage());
+
+        server.stop();
+        result = serverProxy.getAllEvents(AUTHTOKEN, collect(events));
+        assertFalse(result.isSuccess());
+        assertEquals("Invalid input", result.getMessage());
+    }
+
+    @Test
+    public void testAbnormalStream() {
+        // fields in any order, unknown fields skipped, and text decoded as UTF-8
+        ArrayList<Event> events = new ArrayList<>();
+        server.setEventsJson("{\"success\":true,\"extra\":[1,{\"a\":2}],\"data\":[{\"eventID\":"
+                + "\"e1\",\"city\":\"Z\u00fcrich\",\"year\":1900}],\"message\":null}");
+        Result result = serverProxy.getAllEvents(AUTHTOKEN, collect(events));
+        assertTrue(result.isSuccess());
+        assertEquals(1, events.size());
+        assertEquals("Z\u00fcrich", events.get(0).getCity());
+
+        // a response cut off partway is a json error, whatever was read before it
+        String json = StandInServer.toEventsJson(2, EVENTS_PER_PERSON);
+        server.setEventsJson(json.substring(0, json.length() / 2));
+        result = serverProxy.getAllEvents(AUTHTOKEN, collect(new ArrayList<Event>()));
+        assertFalse(result.isSuccess());
+        assertEquals("Json error", result.getMessage());
+    }
+
+    @Test
+    public void testBenchmarkStream() {
+        String json = StandInServer.toEventsJson(NUM_PEOPLE, EVENTS_PER_PERSON);
+        server.setEventsJson(json);
+        final int[] numStreamed = new int[1];
+        final long[] streamPeak = new long[1];
+        final long[] baseline = new long[1];
+        ServerProxy.Sink<Event> counter = new ServerProxy.Sink<Event>() {
+            @Override
+            public void accept(Event event) {
+                if (++numStreamed[0] % SAMPLE_INTERVAL == 0) {
+                    streamPeak[0] = Math.max(streamPeak[0], liveBytes() - baseline[0]);
+                }
+            }
+        };
+        // warm up both paths before either is measured
+        serverProxy.getAllEvents(AUTHTOKEN);
+        serverProxy.getAllEvents(AUTHTOKEN, counter);
+
+        // the string path holds its whole result once parsing ends, and the whole response
+        // as well while parsing, so what it holds afterwards is a lower bound of its peak
+        long before = liveBytes();
+        EventsResult stringResult = serverProxy.getAllEvents(AUTHTOKEN);
+        long stringHeld = liveBytes() - before;
+        int numEvents = stringResult.getData().size();
+        stringResult = null;
+
+        numStreamed[0] = 0;
+        streamPeak[0] = 0;
+        baseline[0] = liveBytes();
+        assertTrue(serverProxy.getAllEvents(AUTHTOKEN, counter).isSuccess());
+
+        assertEquals(numEvents, numStreamed[0]);
+        String report = "string path held " + stringHeld / 1024 + "KB after parsing, stream "
+                + "peaked at " + streamPeak[0] / 1024 + "KB for a " + json.length() / 1024
+                + "KB response";
+        // the stream never holds more than a buffer of the response at once
+        assertTrue(report, streamPeak[0] < json.length() / 4);
+    }
+
+    /**
+     * @return the bytes of the heap still reachable after a collection
+     */
+    private static long liveBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static <T> ServerProxy.Sink<T> collect(final ArrayList<T> items) {
+        return new ServerProxy.Sink<T>() {
+            @Override
+            public void accept(T item) {
+                items.add(item);
+            }
+        };
+    }
+}
@@ -0,0 +1,238 @@
+package com.weebly.explearn.familymap.net;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import dbModels.Event;
+import dbModels.Person;
+import results.EventsResult;
+import results.LoginResult;
+import results.PeopleResult;
+
+/**
+ * A local stand-in for the family map server, answering /person and /event with set
+ * responses after an artificial delay, so requests can be measured without the real server
+ * Responses can be compressed for clients which accept gzip and sent at a limited bandwidth,
+ * and /user/register records the last request body it received
+ * It also records the most /person and /event requests it has answered at the same time,
+ * so a test can tell whether requests overlapped without timing them
+ */
+class StandInServer {
+
+    private static final int CHUNK_SIZE = 16 * 1024; // bytes written between bandwidth pauses
+
+    private final HttpServer server;
+    private final long latencyMillis; // added to every response
+    private volatile byte[] peopleBody; // encoded once, so answering doesn't copy it
+    private volatile byte[] eventsBody;
+    private volatile boolean gzip; // whether responses are compressed when accepted
+    private final AtomicLong bytesSent = new AtomicLong(); // response body bytes on the wire
+    private final AtomicInteger numInFlight = new AtomicInteger(); // requests being answered
+    private final AtomicInteger maxInFlight = new AtomicInteger(); // most answered at once
+    private volatile String requestEncoding; // content encoding of the last request body
+    private volatile long requestLength; // bytes on the wire of the last request body
+    private volatile String requestBody; // the last request body, decompressed
+
+    /**
+     * Starts a stand-in server on a free local port, answering with one person and their events
+     *
+     * @param latencyMillis the delay before every response
+     * @throws IOException if the server can't be started
+     */
+    StandInServer(long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        setPeopleJson(toPeopleJson(1));
+        setEventsJson(toEventsJson(1, 1));
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/person", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respondInFlight(exchange, peopleBody);
+            }
+        });
+        server.createContext("/event", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respondInFlight(exchange, eventsBody);
+            }
+        });
+        server.createContext("/user/register", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receive(exchange);
+                String json = new Gson().toJson(new LoginResult("token", "dyl", "p0"));
+                respond(exchange, json.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /**
+     * @return a server proxy sending its requests to this stand-in
+     */
+    ServerProxy getServerProxy() {
+        return new ServerProxy("localhost", String.valueOf(server.getAddress().getPort()));
+    }
+
+    void setPeopleJson(String json) {
+        peopleBody = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    void setEventsJson(String json) {
+        eventsBody = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return the response body bytes sent since the server started, as compressed
+     */
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return the most /person and /event requests answered at the same time since the
+     *         last reset
+     */
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    void resetMaxInFlight() {
+        maxInFlight.set(numInFlight.get());
+    }
+
+    String getRequestEncoding() {
+        return requestEncoding;
+    }
+
+    long getRequestLength() {
+        return requestLength;
+    }
+
+    String getRequestBody() {
+        return requestBody;
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * @param numPeople the number of people in the response
+     * @return a successful /person response
+     */
+    static String toPeopleJson(int numPeople) {
+        ArrayList<Person> people = new ArrayList<>();
+        for (int i = 0; i < numPeople; i++) {
+            people.add(new Person("p" + i, "dyl", "First" + i, "Webb", i % 2 == 0 ? "m" : "f",
+                    null, null, null));
+        }
+        return new Gson().toJson(new PeopleResult(people));
+    }
+
+    /**
+     * @param numPeople the number of people whose events are in the response
+     * @param eventsPerPerson the number of events of each person
+     * @return a successful /event response
+     */
+    static String toEventsJson(int numPeople, int eventsPerPerson) {
+        ArrayList<Event> events = new ArrayList<>();
+        for (int i = 0; i < numPeople; i++) {
+            for (int j = 0; j < eventsPerPerson; j++) {
+                events.add(new Event("e" + i + "_" + j, "dyl", "p" + i, 40.2 + j, -111.6 - j,
+                        "USA", "Provo", j == 0 ? "Birth" : "Marriage", 1900 + i % 100 + j));
+            }
+        }
+        return new Gson().toJson(new EventsResult(events));
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        pause(latencyMillis);
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (gzip && accepted != null && accepted.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzipOut = new GZIPOutputStream(compressed);
+            gzipOut.write(body);
+            gzipOut.close();
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, body.length - offset);
+            out.write(body, offset, length);
+            out.flush();
+            bytesSent.addAndGet(length);
+        }
+        out.close();
+    }
+
+    private void respondInFlight(HttpExchange exchange, byte[] body) throws IOException {
+        int n = numInFlight.incrementAndGet();
+        int max;
+        while ((max = maxInFlight.get()) < n && !maxInFlight.compareAndSet(max, n)) {
+            // another request raised the maximum first, so check again
+        }
+        try {
+            respond(exchange, body);
+        }
+        finally {
+            numInFlight.decrementAndGet();
+        }
+    }
+
+    private void receive(HttpExchange exchange) throws IOException {
+        byte[] raw = readAll(exchange.getRequestBody());
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        byte[] body = raw;
+        if ("gzip".equals(encoding)) {
+            body = readAll(new GZIPInputStream(new ByteArrayInputStream(raw)));
+        }
+        requestEncoding = encoding;
+        requestLength = raw.length;
+        requestBody = new String(body, "UTF-8");
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int len;
+        while ((len = in.read(buf)) > 0) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.weebly.explearn.familymap.ui;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class ByteLruCacheTest extends TestCase {
+
+    private static final int BUDGET = 1000;
+
+    private ByteLruCache<String> cache;
+
+    public void setUp() {
+        cache = new ByteLruCache<>(BUDGET);
+    }
+
+    @Test
+    public void testPassBudget() {
+        cache.put("red/48", "red", 400);
+        cache.put("blue/48", "blue", 400);
+        assertEquals(800, cache.size());
+        assertEquals(2, cache.count());
+
+        // using red makes blue the least recently used, so blue is dropped for green
+        assertEquals("red", cache.get("red/48"));
+        cache.put("green/48", "green", 400);
+        assertEquals(800, cache.size());
+        assertNull(cache.get("blue/48"));
+        assertEquals("red", cache.get("red/48"));
+        assertEquals("green", cache.get("green/48"));
+
+        // smaller icons fit more of them in the same budget
+        cache.put("red/24", "small red", 100);
+        cache.put("blue/24", "small blue", 100);
+        assertEquals(4, cache.count());
+        assertEquals(1000, cache.size());
+    }
+
+    @Test
+    public void testPassCounters() {
+        assertNull(cache.get("red/48"));
+        cache.put("red/48", "red", 400);
+        assertEquals("red", cache.get("red/48"));
+        assertEquals("red", cache.get("red/48"));
+        assertNull(cache.get("blue/48"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // dropping the icons keeps the counts, and the next lookup misses
+        cache.evictAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.count());
+        assertNull(cache.get("red/48"));
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testPassOnDropped() {
+        final ArrayList<String> dropped = new ArrayList<>();
+        cache = new ByteLruCache<String>(BUDGET) {
+            @Override
+            protected void onDropped(String key, String value) {
+                dropped.add(key);
+            }
+        };
+        cache.put("red/48", "red", 600);
+        cache.put("red/48", "new red", 600);
+        assertTrue(dropped.isEmpty());
+
+        // values dropped for space or all at once are reported, replaced ones are not
+        cache.put("blue/48", "blue", 600);
+        assertEquals(Arrays.asList("red/48"), dropped);
+        cache.evictAll();
+        assertEquals(Arrays.asList("red/48", "blue/48"), dropped);
+    }
+
+    @Test
+    public void testAbnormalBudget() {
+        // replacing a value counts only its new size
+        cache.put("red/48", "red", 400);
+        cache.put("red/48", "new red", 600);
+        assertEquals(600, cache.size());
+        assertEquals(1, cache.count());
+        assertEquals("new red", cache.get("red/48"));
+
+        // a value larger than the whole budget is never kept, and takes the rest with it
+        cache.put("huge", "huge", BUDGET + 1);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.count());
+        assertNull(cache.get("huge"));
+
+        // a value exactly the size of the budget is kept on its own
+        cache.put("red/48", "red", 400);
+        cache.put("full", "full", BUDGET);
+        assertEquals(BUDGET, cache.size());
+        assertEquals("full", cache.get("full"));
+        assertNull(cache.get("red/48"));
+    }
+}